@@ -0,0 +1,389 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Throughput benchmarks of parsing, value iteration and belief updates. Each benchmark is executed in a
+ * number of warmup iterations followed by measurement iterations of fixed duration, and the harness reports
+ * operations per second and the number of bytes allocated per operation by the benchmark thread.
+ *
+ * Usage: java Benchmark [-wi warmupIterations] [-i iterations] [-r iterationMillis] [-f regex] [-sizes n1,n2,...] [-csv file]
+ *
+ * The shipped domains are read from the domains directory. Synthetic models are created by the random POMDP
+ * constructor with a fixed seed, -sizes sets their number of states.
+ */
+public class Benchmark {
+	private static final String[] DOMAINS = {"hallway2", "tiger.aaai", "saci-s100-a10-z31"};
+	private static final int SYNTHETIC_ACTIONS = 4;
+	private static final int SYNTHETIC_OBSERVATIONS = 8;
+	private static final double SYNTHETIC_DISCOUNT = 0.95;
+	private static final long SEED = 42;
+	private static final int BELIEF_STEPS = 10; // belief updates are benchmarked on a belief reached by this number of random steps
+	private static final int BATCH_SIZE = 64; // number of beliefs in the batched belief update benchmarks
+	
+	private int warmupIterations = 5;
+	private int iterations = 5;
+	private long iterationMillis = 1000;
+	private Pattern filter = null;
+	private int[] sizes = {100, 200, 400};
+	private String csvFile = null;
+	
+	private PrintStream out; // System.out is silenced while benchmarks run, results are printed here
+	private List<String> results = new ArrayList<String>();
+	private double sink = 0.0; // consumes results of the operations, so that the compiler cannot remove them
+	
+	/**
+	 * Operation that is executed repeatedly during an iteration
+	 */
+	private interface Operation {
+		/**
+		 * Execute the operation once
+		 * @return value derived from the result of the operation
+		 */
+		double run();
+	}
+	
+	public static void main(String[] args) {
+		Benchmark benchmark = new Benchmark();
+		benchmark.parseArguments(args);
+		benchmark.runAll();
+	}
+	
+	private void parseArguments(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			
+			if(i+1 == args.length) {
+				throw new IllegalArgumentException("Missing value of "+arg);
+			}
+			
+			String value = args[++i];
+			
+			if(arg.equals("-wi")) {
+				warmupIterations = Integer.parseInt(value);
+			}
+			else if(arg.equals("-i")) {
+				iterations = Integer.parseInt(value);
+			}
+			else if(arg.equals("-r")) {
+				iterationMillis = Long.parseLong(value);
+			}
+			else if(arg.equals("-f")) {
+				filter = Pattern.compile(value);
+			}
+			else if(arg.equals("-sizes")) {
+				String[] parts = value.split(",");
+				sizes = new int[parts.length];
+				
+				for(int j = 0; j < parts.length; j++) {
+					sizes[j] = Integer.parseInt(parts[j].trim());
+				}
+			}
+			else if(arg.equals("-csv")) {
+				csvFile = value;
+			}
+			else {
+				throw new IllegalArgumentException("Unknown argument "+arg);
+			}
+		}
+		
+		if(iterations < 1) {
+			throw new IllegalArgumentException("At least one measurement iteration is required");
+		}
+	}
+	
+	private void runAll() {
+		out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		out.format("# Warmup: %d iterations, measurement: %d iterations, %d ms each%n", warmupIterations, iterations, iterationMillis);
+		out.format("%-40s %5s %14s    %-12s %12s %12s%n", "Benchmark", "Cnt", "Score", "Error", "B/op", "MB/s");
+		
+		try {
+			for(String domain : DOMAINS) {
+				final String fileName = "domains/"+domain+".POMDP";
+				
+				if(isSelected("parse:"+domain)) {
+					measure("parse:"+domain, new Operation() {
+						public double run() {
+							return ParsePOMDP.readPOMDP(fileName).getNumStates();
+						}
+					});
+				}
+				
+				benchmarkModel(domain, ParsePOMDP.readPOMDP(fileName));
+			}
+			
+			for(int nStates : sizes) {
+				POMDP pomdp = new POMDP(nStates, SYNTHETIC_ACTIONS, SYNTHETIC_OBSERVATIONS, SYNTHETIC_DISCOUNT, new Random(SEED));
+				benchmarkModel("random-"+nStates, pomdp);
+			}
+		}
+		finally {
+			System.setOut(out);
+		}
+		
+		out.format("# sink %s%n", sink);
+		
+		if(csvFile != null) {
+			writeCSV();
+		}
+	}
+	
+	/**
+	 * Run the solver and belief update benchmarks on a model
+	 * @param label label of the model
+	 * @param pomdp model
+	 */
+	private void benchmarkModel(String label, final POMDP pomdp) {
+		if(isSelected("vi-sweep:"+label)) {
+			final VI vi = new VI(pomdp);
+			
+			measure("vi-sweep:"+label, new Operation() {
+				public double run() {
+					return vi.sweep();
+				}
+			});
+		}
+		
+		if(isSelected("vi-solve:"+label)) {
+			measure("vi-solve:"+label, new Operation() {
+				public double run() {
+					// same stopping criterion as VI.Solve, without printing the Q-table
+					VI vi = new VI(pomdp);
+					int count = 1;
+					
+					while(vi.sweep() > 0.01) {
+						count++;
+					}
+					
+					return count;
+				}
+			});
+		}
+		
+		final BeliefPoint b = sampleBelief(pomdp, SEED);
+		
+		if(isSelected("prepareBelief:"+label)) {
+			measure("prepareBelief:"+label, new Operation() {
+				public double run() {
+					// a belief can only be prepared once, the new point shares the probabilities of b
+					BeliefPoint bPrepare = copyBelief(b);
+					pomdp.prepareBelief(bPrepare);
+					return bPrepare.getActionObservationProbability(0, 0);
+				}
+			});
+		}
+		
+		if(isSelected("updateBelief:"+label)) {
+			// cycle through the action-observation pairs that have nonzero probability in b
+			pomdp.prepareBelief(b);
+			final int[] pairs = getPossiblePairs(pomdp, b);
+			
+			measure("updateBelief:"+label, new Operation() {
+				private int next = 0;
+				
+				public double run() {
+					int a = pairs[next];
+					int o = pairs[next+1];
+					next = (next + 2) % pairs.length;
+					return pomdp.updateBelief(b, a, o).getBelief(0);
+				}
+			});
+		}
+		
+		if(isSelected("updateBelief-all:"+label) || isSelected("updateBeliefs:"+label)) {
+			// successors of a batch of beliefs for all observations, one action per operation
+			final int nStates = pomdp.getNumStates();
+			final BeliefPoint[] batch = new BeliefPoint[BATCH_SIZE];
+			final double[] beliefs = new double[BATCH_SIZE * nStates];
+			
+			for(int i = 0; i < BATCH_SIZE; i++) {
+				batch[i] = sampleBelief(pomdp, SEED + i);
+				batch[i].copyTo(beliefs, i * nStates);
+			}
+			
+			if(isSelected("updateBelief-all:"+label)) {
+				measure("updateBelief-all:"+label, new Operation() {
+					private int a = 0;
+					
+					public double run() {
+						double result = 0.0;
+						
+						for(int i = 0; i < BATCH_SIZE; i++) {
+							BeliefPoint[] successors = pomdp.updateBelief(batch[i], a);
+							result += successors[successors.length - 1] == null ? 0.0 : 1.0;
+						}
+						
+						a = (a + 1) % pomdp.getNumActions();
+						return result;
+					}
+				});
+			}
+			
+			if(isSelected("updateBeliefs:"+label)) {
+				final double[] newBeliefs = new double[BATCH_SIZE * pomdp.getNumObservations() * nStates];
+				final double[] normalizers = new double[BATCH_SIZE * pomdp.getNumObservations()];
+				
+				measure("updateBeliefs:"+label, new Operation() {
+					private int a = 0;
+					
+					public double run() {
+						pomdp.updateBeliefs(beliefs, BATCH_SIZE, a, newBeliefs, normalizers);
+						a = (a + 1) % pomdp.getNumActions();
+						return normalizers[normalizers.length - 1];
+					}
+				});
+			}
+		}
+	}
+	
+	/**
+	 * Execute warmup and measurement iterations of an operation and report its throughput and allocation
+	 * @param name benchmark name
+	 * @param op operation
+	 */
+	private void measure(String name, Operation op) {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		double[] opsPerSecond = new double[iterations];
+		long totalOps = 0;
+		long totalBytes = 0;
+		long totalNanos = 0;
+		
+		for(int i = 0; i < warmupIterations + iterations; i++) {
+			long bytesStart = threadBean.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime();
+			long end = start + iterationMillis * 1000000L;
+			long ops = 0;
+			long now;
+			
+			do {
+				sink += op.run();
+				ops++;
+				now = System.nanoTime();
+			} while(now < end);
+			
+			long bytes = threadBean.getCurrentThreadAllocatedBytes() - bytesStart;
+			
+			if(i >= warmupIterations) {
+				opsPerSecond[i - warmupIterations] = ops / ((now - start) / 1e9);
+				totalOps += ops;
+				totalBytes += bytes;
+				totalNanos += now - start;
+			}
+		}
+		
+		double mean = 0.0;
+		
+		for(double x : opsPerSecond) {
+			mean += x;
+		}
+		
+		mean /= iterations;
+		double variance = 0.0;
+		
+		for(double x : opsPerSecond) {
+			variance += (x - mean) * (x - mean);
+		}
+		
+		double stdDev = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0.0;
+		double bytesPerOp = (double) totalBytes / totalOps;
+		double allocationRate = totalBytes / (totalNanos / 1e9) / (1024.0 * 1024.0);
+		
+		out.format("%-40s %5d %14.3f +- %-12.3f %12.1f %12.1f%n", name, iterations, mean, stdDev, bytesPerOp, allocationRate);
+		results.add(String.format(java.util.Locale.ROOT, "%s,%d,%f,%f,%f,%f", name, iterations, mean, stdDev, bytesPerOp, allocationRate));
+	}
+	
+	private boolean isSelected(String name) {
+		return filter == null || filter.matcher(name).find();
+	}
+	
+	/**
+	 * Sample a belief by executing random actions from the initial belief
+	 * @param pomdp model
+	 * @param seed seed of the random actions and observations
+	 * @return belief, which is sparse if updateBelief made it sparse
+	 */
+	private BeliefPoint sampleBelief(POMDP pomdp, long seed) {
+		Random rnd = new Random(seed);
+		BeliefPoint b = pomdp.getInitialBelief();
+		
+		for(int step = 0; step < BELIEF_STEPS; step++) {
+			BeliefPoint bPrepared = copyBelief(b);
+			pomdp.prepareBelief(bPrepared);
+			int[] pairs = getPossiblePairs(pomdp, bPrepared);
+			int i = rnd.nextInt(pairs.length / 2);
+			b = pomdp.updateBelief(bPrepared, pairs[2*i], pairs[2*i+1]);
+		}
+		
+		return copyBelief(b);
+	}
+	
+	/**
+	 * Copy a belief without its action-observation probabilities, keeping its sparse or dense representation such that
+	 * the benchmarks measure the representation produced by updateBelief
+	 * @param b belief
+	 * @return unprepared copy of b
+	 */
+	private BeliefPoint copyBelief(BeliefPoint b) {
+		if(!b.isSparse()) {
+			return new BeliefPoint(b.getBelief());
+		}
+		
+		int[] indices = new int[b.getNumEntries()];
+		double[] values = new double[b.getNumEntries()];
+		
+		for(int k = 0; k < indices.length; k++) {
+			indices[k] = b.getEntryState(k);
+			values[k] = b.getEntryValue(k);
+		}
+		
+		return new BeliefPoint(b.getNumStates(), indices, values);
+	}
+	
+	/**
+	 * Get action-observation pairs with nonzero probability in a prepared belief
+	 * @param pomdp model
+	 * @param b belief
+	 * @return array containing a and o of each pair at consecutive positions
+	 */
+	private int[] getPossiblePairs(POMDP pomdp, BeliefPoint b) {
+		List<Integer> pairs = new ArrayList<Integer>();
+		
+		for(int a = 0; a < pomdp.getNumActions(); a++) {
+			for(int o = 0; o < pomdp.getNumObservations(); o++) {
+				if(b.getActionObservationProbability(a, o) > 0.0) {
+					pairs.add(a);
+					pairs.add(o);
+				}
+			}
+		}
+		
+		int[] result = new int[pairs.size()];
+		
+		for(int i = 0; i < result.length; i++) {
+			result[i] = pairs.get(i);
+		}
+		
+		return result;
+	}
+	
+	private void writeCSV() {
+		try(PrintWriter writer = new PrintWriter(new FileWriter(csvFile))) {
+			writer.println("benchmark,iterations,ops_per_second,stddev,bytes_per_op,mb_per_second");
+			
+			for(String line : results) {
+				writer.println(line);
+			}
+		}
+		catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
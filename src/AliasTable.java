@@ -0,0 +1,129 @@
+import java.util.SplittableRandom;
+
+/**
+ * Alias tables of all rows of sparse matrices, which draw a column of a row with probability proportional to its
+ * value in constant time using Vose's alias method. The tables use the row layout of SparseActionMatrix.
+ */
+public class AliasTable {
+	private int nActions;
+	private int nRows;
+	
+	// row r of action a has index r*nActions+a and occupies positions rowStart[r*nActions+a] ... rowStart[r*nActions+a+1]-1
+	private int[] rowStart;
+	private int[] columns;
+	private double[] probability; // probability of drawing the column at a position instead of its alias
+	private int[] alias; // position of the alias column
+	
+	/**
+	 * Build the alias tables of all rows. Rows do not have to be normalized, and empty rows cannot be sampled.
+	 * @param m sparse matrices with nonnegative values
+	 */
+	public AliasTable(SparseActionMatrix m) {
+		this.nActions = m.getNumActions();
+		this.nRows = m.getNumRows();
+		this.rowStart = new int[nActions*nRows+1];
+		this.columns = new int[m.getNumNonZeros()];
+		this.probability = new double[columns.length];
+		this.alias = new int[columns.length];
+		
+		int[] small = new int[m.getNumColumns()];
+		int[] large = new int[m.getNumColumns()];
+		int n = 0;
+		
+		for(int r=0; r<nRows; r++) {
+			for(int a=0; a<nActions; a++) {
+				int start = n;
+				double sum = 0.0;
+				
+				for(int k=m.getRowStart(a, r); k<m.getRowEnd(a, r); k++) {
+					columns[n] = m.getColumn(a, k);
+					probability[n] = m.getValue(a, k);
+					sum += probability[n];
+					n++;
+				}
+				
+				rowStart[r*nActions+a+1] = n;
+				buildRow(start, n, sum, small, large);
+			}
+		}
+	}
+	
+	/**
+	 * Build the alias table of a single distribution, which is sampled using action 0 and row 0
+	 * @param distribution probabilities of the columns
+	 * @return alias table
+	 */
+	public static AliasTable fromDistribution(double[] distribution) {
+		SparseActionMatrix.Builder builder = new SparseActionMatrix.Builder(1, 1, distribution.length);
+		
+		for(int i=0; i<distribution.length; i++) {
+			builder.add(0, 0, i, distribution[i]);
+		}
+		
+		return new AliasTable(builder.build());
+	}
+	
+	/**
+	 * Convert the scaled values at positions [start, end) into probabilities and aliases
+	 * @param start first position of the row
+	 * @param end last position of the row (exclusive)
+	 * @param sum sum of the values of the row
+	 * @param small work array holding positions with scaled value below 1
+	 * @param large work array holding positions with scaled value at least 1
+	 */
+	private void buildRow(int start, int end, double sum, int[] small, int[] large) {
+		int length = end - start;
+		int nSmall = 0;
+		int nLarge = 0;
+		
+		for(int k=start; k<end; k++) {
+			probability[k] = probability[k] * length / sum;
+			alias[k] = k;
+			
+			if(probability[k] < 1.0) {
+				small[nSmall++] = k;
+			}
+			else {
+				large[nLarge++] = k;
+			}
+		}
+		
+		// each small position is filled up by a large position, which becomes small if it drops below 1
+		while(nSmall > 0 && nLarge > 0) {
+			int l = small[--nSmall];
+			int g = large[nLarge-1];
+			alias[l] = g;
+			probability[g] = (probability[g] + probability[l]) - 1.0;
+			
+			if(probability[g] < 1.0) {
+				nLarge--;
+				small[nSmall++] = g;
+			}
+		}
+		
+		// remaining positions are 1 up to rounding errors
+		while(nLarge > 0) {
+			probability[large[--nLarge]] = 1.0;
+		}
+		
+		while(nSmall > 0) {
+			probability[small[--nSmall]] = 1.0;
+		}
+	}
+	
+	/**
+	 * Draw a column of a row
+	 * @param a action a
+	 * @param row row
+	 * @param rnd random generator
+	 * @return column, drawn with probability proportional to its value
+	 */
+	public int sample(int a, int row, SplittableRandom rnd) {
+		int start = rowStart[row*nActions+a];
+		int length = rowStart[row*nActions+a+1] - start;
+		assert length > 0 : "cannot sample from an empty row";
+		
+		int k = start + rnd.nextInt(length);
+		return rnd.nextDouble() < probability[k] ? columns[k] : columns[alias[k]];
+	}
+}
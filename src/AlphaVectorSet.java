@@ -0,0 +1,198 @@
+
+/**
+ * Set of alpha vectors stored contiguously in a single array. Vector i occupies
+ * positions i*nStates ... (i+1)*nStates-1 of the arena.
+ */
+public class AlphaVectorSet {
+	private int nStates;
+	private int size = 0;
+	private double[] arena;
+	private int[] actions;
+	
+	public AlphaVectorSet(int nStates, int capacity) {
+		this.nStates = nStates;
+		this.arena = new double[nStates * capacity];
+		this.actions = new int[capacity];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int getCapacity() {
+		return actions.length;
+	}
+	
+	public void clear() {
+		size = 0;
+	}
+	
+	/**
+	 * Get the arena containing all vectors
+	 * @return arena
+	 */
+	public double[] getArena() {
+		return arena;
+	}
+	
+	/**
+	 * Get position of the first entry of a vector in the arena
+	 * @param i vector index
+	 * @return offset
+	 */
+	public int getOffset(int i) {
+		return i * nStates;
+	}
+	
+	public double getValue(int i, int s) {
+		assert i < size && s < nStates;
+		return arena[i * nStates + s];
+	}
+	
+	public int getAction(int i) {
+		assert i < size;
+		return actions[i];
+	}
+	
+	/**
+	 * Reserve space for a new vector, the entries of which must be written by the caller
+	 * @param action action of the new vector
+	 * @return index of the new vector
+	 */
+	public int allocate(int action) {
+		assert size < actions.length : "alpha vector set is full";
+		actions[size] = action;
+		return size++;
+	}
+	
+	/**
+	 * Remove the vector that was added last
+	 */
+	public void removeLast() {
+		assert size > 0;
+		size--;
+	}
+	
+	/**
+	 * Add a copy of a vector of another set
+	 * @param other other set
+	 * @param i index of the vector in the other set
+	 * @return index of the new vector
+	 */
+	public int add(AlphaVectorSet other, int i) {
+		assert other.nStates == nStates;
+		int j = allocate(other.actions[i]);
+		System.arraycopy(other.arena, i * nStates, arena, j * nStates, nStates);
+		return j;
+	}
+	
+	/**
+	 * Compute the inner product of a vector and a dense belief vector
+	 * @param i vector index
+	 * @param belief belief vector
+	 * @return inner product
+	 */
+	public double dot(int i, double[] belief) {
+		return dot(i, belief, 0);
+	}
+	
+	/**
+	 * Compute the inner product of a vector and a dense belief vector stored at an offset of an array
+	 * @param i vector index
+	 * @param beliefs array containing the belief vector
+	 * @param beliefOffset position of the first entry of the belief vector
+	 * @return inner product
+	 */
+	public double dot(int i, double[] beliefs, int beliefOffset) {
+		int offset = i * nStates;
+		double sum = 0.0;
+		
+		for(int s = 0; s < nStates; s++) {
+			sum += arena[offset + s] * beliefs[beliefOffset + s];
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * Find the vector that maximizes the inner product with a belief vector stored at an offset of an array
+	 * @param beliefs array containing the belief vector
+	 * @param beliefOffset position of the first entry of the belief vector
+	 * @return index of the best vector
+	 */
+	public int getBestVector(double[] beliefs, int beliefOffset) {
+		int best = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		
+		for(int i = 0; i < size; i++) {
+			double v = dot(i, beliefs, beliefOffset);
+			
+			if(v > bestValue) {
+				bestValue = v;
+				best = i;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Compute the inner product of a vector and a belief, visiting only the stored entries of a sparse belief
+	 * @param i vector index
+	 * @param b belief
+	 * @return inner product
+	 */
+	public double dot(int i, BeliefPoint b) {
+		if(!b.isSparse()) {
+			return dot(i, b.getBelief(), 0);
+		}
+		
+		int offset = i * nStates;
+		double sum = 0.0;
+		
+		for(int k = 0; k < b.getNumEntries(); k++) {
+			sum += arena[offset + b.getEntryState(k)] * b.getEntryValue(k);
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * Find the vector that maximizes the inner product with a belief
+	 * @param b belief
+	 * @return index of the best vector
+	 */
+	public int getBestVector(BeliefPoint b) {
+		int best = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		
+		for(int i = 0; i < size; i++) {
+			double v = dot(i, b);
+			
+			if(v > bestValue) {
+				bestValue = v;
+				best = i;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Compute the value of a belief
+	 * @param b belief
+	 * @return max_i alpha_i . b
+	 */
+	public double getValue(BeliefPoint b) {
+		return dot(getBestVector(b), b);
+	}
+	
+	/**
+	 * Get the action of the vector that is maximal in a belief
+	 * @param b belief
+	 * @return action
+	 */
+	public int getAction(BeliefPoint b) {
+		return actions[getBestVector(b)];
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ * Anderson acceleration of a fixed-point iteration x = G(x). The next iterate is extrapolated from the last iterates
+ * and their residuals G(x) - x, using the combination of the stored residual differences that minimizes the L2 norm
+ * of the residual. With memory 0 the step reduces to the relaxation x + beta * (G(x) - x).
+ */
+public class AndersonAccelerator {
+	private final int n;
+	private final int memory;
+	private final double beta;
+	
+	private double[][] deltaX; // deltaX[j] = x_{i+1} - x_i of stored pair j, in a ring buffer
+	private double[][] deltaF; // deltaF[j] = f_{i+1} - f_i of stored pair j
+	private int size = 0;
+	private int next = 0; // ring buffer position of the next pair
+	
+	private double[] x; // last iterate
+	private double[] f; // residual G(x) - x of the last iterate
+	private boolean hasIterate = false;
+	private int restarts = 0;
+	
+	/**
+	 * Create an accelerator
+	 * @param n dimension of the iterates
+	 * @param memory number of previous iterates used for extrapolation
+	 * @param beta mixing parameter, which is the relaxation factor omega if memory is 0
+	 */
+	public AndersonAccelerator(int n, int memory, double beta) {
+		assert memory >= 0 && beta > 0.0;
+		this.n = n;
+		this.memory = memory;
+		this.beta = beta;
+		this.deltaX = new double[memory][n];
+		this.deltaF = new double[memory][n];
+		this.x = new double[n];
+		this.f = new double[n];
+	}
+	
+	/**
+	 * Add an iterate and its image under G
+	 * @param xNew iterate
+	 * @param g G(xNew)
+	 */
+	public void add(double[] xNew, double[] g) {
+		if(hasIterate && memory > 0) {
+			for(int i = 0; i < n; i++) {
+				deltaX[next][i] = xNew[i] - x[i];
+				deltaF[next][i] = (g[i] - xNew[i]) - f[i];
+			}
+			
+			next = (next + 1) % memory;
+			size = Math.min(size + 1, memory);
+		}
+		
+		for(int i = 0; i < n; i++) {
+			x[i] = xNew[i];
+			f[i] = g[i] - xNew[i];
+		}
+		
+		hasIterate = true;
+	}
+	
+	/**
+	 * Compute the next iterate x + beta * f - sum_j gamma_j (deltaX[j] + beta * deltaF[j]), where gamma minimizes |f - sum_j gamma_j deltaF[j]|
+	 * @param result array that receives the next iterate
+	 */
+	public void extrapolate(double[] result) {
+		assert hasIterate;
+		double[] gamma = solveLeastSquares();
+		
+		for(int i = 0; i < n; i++) {
+			double xi = x[i] + beta * f[i];
+			
+			for(int j = 0; j < gamma.length; j++) {
+				xi -= gamma[j] * (deltaX[j][i] + beta * deltaF[j][i]);
+			}
+			
+			result[i] = xi;
+		}
+	}
+	
+	/**
+	 * Solve the normal equations of min |f - deltaF gamma| with a small ridge term, using a Cholesky factorization
+	 * @return coefficients gamma, empty if the history is empty or the system is singular
+	 */
+	private double[] solveLeastSquares() {
+		int m = size;
+		double[][] a = new double[m][m];
+		double[] b = new double[m];
+		double trace = 0.0;
+		
+		for(int j = 0; j < m; j++) {
+			for(int k = 0; k <= j; k++) {
+				a[j][k] = dot(deltaF[j], deltaF[k]);
+				a[k][j] = a[j][k];
+			}
+			
+			b[j] = dot(deltaF[j], f);
+			trace += a[j][j];
+		}
+		
+		if(m == 0 || trace == 0.0) {
+			return new double[0];
+		}
+		
+		double ridge = 1e-10 * trace / m;
+		
+		for(int j = 0; j < m; j++) {
+			a[j][j] += ridge;
+		}
+		
+		// a = L L^T, L is stored in the lower triangle of a
+		for(int j = 0; j < m; j++) {
+			for(int k = 0; k < j; k++) {
+				double sum = a[j][k];
+				
+				for(int l = 0; l < k; l++) {
+					sum -= a[j][l] * a[k][l];
+				}
+				
+				a[j][k] = sum / a[k][k];
+			}
+			
+			double sum = a[j][j];
+			
+			for(int l = 0; l < j; l++) {
+				sum -= a[j][l] * a[j][l];
+			}
+			
+			if(sum <= 0.0) {
+				restart();
+				return new double[0];
+			}
+			
+			a[j][j] = Math.sqrt(sum);
+		}
+		
+		// forward and backward substitution
+		double[] gamma = new double[m];
+		
+		for(int j = 0; j < m; j++) {
+			double sum = b[j];
+			
+			for(int l = 0; l < j; l++) {
+				sum -= a[j][l] * gamma[l];
+			}
+			
+			gamma[j] = sum / a[j][j];
+		}
+		
+		for(int j = m - 1; j >= 0; j--) {
+			double sum = gamma[j];
+			
+			for(int l = j + 1; l < m; l++) {
+				sum -= a[l][j] * gamma[l];
+			}
+			
+			gamma[j] = sum / a[j][j];
+		}
+		
+		return gamma;
+	}
+	
+	private double dot(double[] u, double[] v) {
+		double sum = 0.0;
+		
+		for(int i = 0; i < n; i++) {
+			sum += u[i] * v[i];
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * Clear the history but keep the last iterate, so the next extrapolation is a relaxation step
+	 */
+	public void restart() {
+		size = 0;
+		next = 0;
+		restarts++;
+	}
+	
+	/**
+	 * Remove all iterates, for instance after the fixed-point map has changed
+	 */
+	public void reset() {
+		size = 0;
+		next = 0;
+		hasIterate = false;
+	}
+	
+	public boolean hasIterate() {
+		return hasIterate;
+	}
+	
+	/**
+	 * Get number of times the history was cleared by restart or because the least squares problem was singular
+	 * @return number of restarts
+	 */
+	public int getNumRestarts() {
+		return restarts;
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ * Solver that can be stopped at any time and then returns the best value function found so far
+ */
+public interface AnytimeSolver {
+	/**
+	 * Continue solving from the current Q-values until the stopping rule of the solver is satisfied, or until a budget is used up
+	 * @param epsilon threshold of the stopping rule
+	 * @param timeBudgetMillis wall-clock budget in milliseconds, or a negative value for no budget
+	 * @param maxIterations maximum number of sweeps, or a negative value for no limit
+	 * @param token token that cancels the solver, or null
+	 * @return value function of the last completed sweep, with its error bound
+	 */
+	SolveResult solve(double epsilon, long timeBudgetMillis, int maxIterations, CancellationToken token);
+	
+	/**
+	 * Set the Q-values the solver starts from, for instance the solution of a previous solve before the model changed
+	 * @param qTable Q-table with Q(s,a) at position s*nActions+a
+	 */
+	void setInitialQTable(double[] qTable);
+}
@@ -0,0 +1,124 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of successor beliefs keyed by (belief, a, o), which evicts the least recently used entry.
+ * Beliefs are compared by identity, since BeliefPoint.equals only compares histories.
+ */
+public class BeliefCache {
+	private final int maxEntries;
+	private final LinkedHashMap<Key,BeliefPoint> map;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	
+	public BeliefCache(int maxEntries) {
+		assert maxEntries > 0;
+		this.maxEntries = maxEntries;
+		this.map = new LinkedHashMap<Key,BeliefPoint>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			protected boolean removeEldestEntry(Map.Entry<Key,BeliefPoint> eldest) {
+				if(size() > BeliefCache.this.maxEntries) {
+					evictions++;
+					return true;
+				}
+				
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * Create a cache that holds at most approximately the given number of bytes of belief vectors
+	 * @param maxBytes memory bound
+	 * @param nStates number of states
+	 * @return cache
+	 */
+	public static BeliefCache withMemoryLimit(long maxBytes, int nStates) {
+		// belief vector, BeliefPoint, key and map entry
+		long entryBytes = 8L * nStates + 16 + 96 + 32 + 48;
+		return new BeliefCache((int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / entryBytes)));
+	}
+	
+	/**
+	 * Get the successor of belief b after executing a and observing o
+	 * @param b belief b
+	 * @param a action a
+	 * @param o observation o
+	 * @return successor belief, or null if it is not in the cache
+	 */
+	public synchronized BeliefPoint get(BeliefPoint b, int a, int o) {
+		BeliefPoint successor = map.get(new Key(b, a, o));
+		
+		if(successor == null) {
+			misses++;
+		}
+		else {
+			hits++;
+		}
+		
+		return successor;
+	}
+	
+	/**
+	 * Store the successor of belief b after executing a and observing o
+	 * @param b belief b
+	 * @param a action a
+	 * @param o observation o
+	 * @param successor successor belief
+	 */
+	public synchronized void put(BeliefPoint b, int a, int o, BeliefPoint successor) {
+		map.put(new Key(b, a, o), successor);
+	}
+	
+	public synchronized void clear() {
+		map.clear();
+	}
+	
+	public synchronized int size() {
+		return map.size();
+	}
+	
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+	
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+	
+	public synchronized String toString() {
+		return "<BeliefCache(size="+map.size()+",hits="+hits+",misses="+misses+",evictions="+evictions+")>";
+	}
+	
+	private static class Key {
+		private final BeliefPoint b;
+		private final int a;
+		private final int o;
+		
+		Key(BeliefPoint b, int a, int o) {
+			this.b = b;
+			this.a = a;
+			this.o = o;
+		}
+		
+		public int hashCode() {
+			return (System.identityHashCode(b) * 31 + a) * 31 + o;
+		}
+		
+		public boolean equals(Object other) {
+			if(!(other instanceof Key)) return false;
+			Key k = (Key) other;
+			return k.b == b && k.a == a && k.o == o;
+		}
+	}
+}
@@ -0,0 +1,476 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Index of beliefs that finds beliefs within an L1 distance and the k nearest beliefs of a query, for instance to
+ * avoid storing near-duplicate beliefs that were reached by different histories. Beliefs with identical vectors are
+ * stored once, since a set of identical points cannot be divided by their distances to a vantage point.
+ *
+ * The index is a vantage point tree built by insertion. Points are added to leaf buckets, and a full bucket is split
+ * by choosing a vantage point and moving the other points to an inner child if their distance to the vantage point is
+ * below the median and to an outer child otherwise. Each node keeps the range of the distances of the points in its
+ * children to the vantage point, which bounds the distance between a query and any point in a child by the triangle
+ * inequality. Queries only read the tree, so they may run concurrently with each other, but add and addIfAbsent modify
+ * it and must not run concurrently with any other method.
+ */
+public class BeliefIndex {
+	private static final int LEAF_SIZE = 32; // number of points in a bucket before it is split
+	
+	private Node root = new Node(LEAF_SIZE);
+	private int size = 0;
+	private LongAdder distanceComputations = new LongAdder(); // incremented by concurrent queries
+	
+	/**
+	 * Node of the tree, which is a leaf with a bucket of points or an internal node with a vantage point
+	 */
+	private static class Node {
+		private BeliefPoint[] points; // null if the node is internal
+		private double[] parentDistances; // distance of each point to the vantage point of the parent, NaN in the root
+		private int nPoints = 0;
+		
+		private BeliefPoint vantagePoint;
+		private double mu; // points with a distance below mu to the vantage point are in the inner child
+		private Node inner;
+		private Node outer;
+		private double innerMin = Double.POSITIVE_INFINITY; // distances of the inner points to the vantage point
+		private double innerMax = Double.NEGATIVE_INFINITY;
+		private double outerMin = Double.POSITIVE_INFINITY; // distances of the outer points to the vantage point
+		private double outerMax = Double.NEGATIVE_INFINITY;
+		
+		Node(int capacity) {
+			points = new BeliefPoint[capacity];
+			parentDistances = new double[capacity];
+		}
+		
+		private boolean isLeaf() {
+			return points != null;
+		}
+	}
+	
+	/**
+	 * Get L1 distance between two beliefs, which iterates only over the stored entries of sparse beliefs
+	 * @param x belief x
+	 * @param y belief y
+	 * @return sum_s |x(s) - y(s)|
+	 */
+	public static double distance(BeliefPoint x, BeliefPoint y) {
+		return distance(x, y, Double.POSITIVE_INFINITY);
+	}
+	
+	/**
+	 * Get L1 distance between two beliefs, which stops as soon as the distance exceeds a limit
+	 * @param x belief x
+	 * @param y belief y
+	 * @param limit limit
+	 * @return distance, or a value above the limit if the distance exceeds the limit
+	 */
+	private static double distance(BeliefPoint x, BeliefPoint y, double limit) {
+		assert x.getNumStates() == y.getNumStates();
+		
+		if(x.isSparse() && !y.isSparse()) {
+			BeliefPoint z = x;
+			x = y;
+			y = z;
+		}
+		
+		double sum = 0.0;
+		
+		if(!x.isSparse() && !y.isSparse()) {
+			double[] xBelief = x.getBelief();
+			double[] yBelief = y.getBelief();
+			
+			for(int s=0; s<xBelief.length; s++) {
+				sum += Math.abs(xBelief[s] - yBelief[s]);
+				
+				// the partial sum is checked once per block of states
+				if((s & 15) == 15 && sum > limit) return sum;
+			}
+		}
+		else if(!x.isSparse()) {
+			// dense x and sparse y, where the states of y replace |x(s)| by |x(s) - y(s)|
+			double[] xBelief = x.getBelief();
+			
+			for(int s=0; s<xBelief.length; s++) {
+				sum += Math.abs(xBelief[s]);
+			}
+			
+			for(int k=0; k<y.getNumEntries(); k++) {
+				double xs = xBelief[y.getEntryState(k)];
+				sum += Math.abs(xs - y.getEntryValue(k)) - Math.abs(xs);
+			}
+			
+			sum = Math.max(sum, 0.0);
+		}
+		else {
+			// both sparse, merge the entries
+			int kx = 0;
+			int ky = 0;
+			
+			while(kx < x.getNumEntries() || ky < y.getNumEntries()) {
+				int sx = kx < x.getNumEntries() ? x.getEntryState(kx) : Integer.MAX_VALUE;
+				int sy = ky < y.getNumEntries() ? y.getEntryState(ky) : Integer.MAX_VALUE;
+				
+				if(sx == sy) {
+					sum += Math.abs(x.getEntryValue(kx++) - y.getEntryValue(ky++));
+				}
+				else if(sx < sy) {
+					sum += Math.abs(x.getEntryValue(kx++));
+				}
+				else {
+					sum += Math.abs(y.getEntryValue(ky++));
+				}
+			}
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * Get the Lipschitz constant of the optimal value function with respect to the L1 distance, which is
+	 * (maxReward - minReward) / (2 (1 - discount)) since all values are between minReward / (1 - discount) and
+	 * maxReward / (1 - discount), and the entries of b - b' sum to zero
+	 * @param pomdp model
+	 * @return Lipschitz constant
+	 */
+	public static double getLipschitzConstant(POMDP pomdp) {
+		return (pomdp.getMaxReward() - pomdp.getMinReward()) / (2.0 * (1.0 - pomdp.getDiscountFactor()));
+	}
+	
+	/**
+	 * Add a belief to the index, unless a belief with the same vector has already been added
+	 * @param b belief
+	 * @return the indexed belief with the vector of b, which is b if it has been added
+	 */
+	public BeliefPoint add(BeliefPoint b) {
+		return addIfAbsent(b, 0.0);
+	}
+	
+	/**
+	 * Insert a belief into the tree
+	 * @param b belief, which is not yet in the index
+	 */
+	private void insert(BeliefPoint b) {
+		Node node = root;
+		double parentDistance = Double.NaN;
+		
+		while(!node.isLeaf()) {
+			double d = computeDistance(b, node.vantagePoint);
+			parentDistance = d;
+			
+			if(d < node.mu) {
+				node.innerMin = Math.min(node.innerMin, d);
+				node.innerMax = Math.max(node.innerMax, d);
+				node = node.inner;
+			}
+			else {
+				node.outerMin = Math.min(node.outerMin, d);
+				node.outerMax = Math.max(node.outerMax, d);
+				node = node.outer;
+			}
+		}
+		
+		if(node.nPoints == node.points.length) {
+			split(node);
+			
+			if(!node.isLeaf()) {
+				// the point is routed to one of the new leaves, which both have space left
+				insert(b);
+				return;
+			}
+			
+			node.points = Arrays.copyOf(node.points, 2*node.points.length);
+			node.parentDistances = Arrays.copyOf(node.parentDistances, node.points.length);
+		}
+		
+		node.parentDistances[node.nPoints] = parentDistance;
+		node.points[node.nPoints++] = b;
+		size++;
+	}
+	
+	/**
+	 * Find a belief within distance epsilon, or add the belief if there is none
+	 * @param b belief
+	 * @param epsilon L1 distance
+	 * @return the nearest belief within distance epsilon, or b if it has been added
+	 */
+	public BeliefPoint addIfAbsent(BeliefPoint b, double epsilon) {
+		BeliefPoint existing = findNearest(b, epsilon);
+		
+		if(existing != null) {
+			return existing;
+		}
+		
+		insert(b);
+		return b;
+	}
+	
+	/**
+	 * Find the nearest belief within distance epsilon
+	 * @param b query belief
+	 * @param epsilon L1 distance
+	 * @return nearest belief, or null if there is no belief within distance epsilon
+	 */
+	public BeliefPoint findNearest(BeliefPoint b, double epsilon) {
+		List<BeliefPoint> neighbours = getNearest(b, 1, epsilon);
+		return neighbours.isEmpty() ? null : neighbours.get(0);
+	}
+	
+	/**
+	 * Get all beliefs within distance epsilon
+	 * @param b query belief
+	 * @param epsilon L1 distance
+	 * @return beliefs in no particular order
+	 */
+	public List<BeliefPoint> getWithin(BeliefPoint b, double epsilon) {
+		Search search = new Search(b, Integer.MAX_VALUE, epsilon);
+		search.visit(root, Double.NaN);
+		return search.getPoints();
+	}
+	
+	/**
+	 * Get the k nearest beliefs
+	 * @param b query belief
+	 * @param k number of beliefs
+	 * @return at most k beliefs in order of increasing distance
+	 */
+	public List<BeliefPoint> getNearest(BeliefPoint b, int k) {
+		return getNearest(b, k, Double.POSITIVE_INFINITY);
+	}
+	
+	/**
+	 * Get the k nearest beliefs within a maximum distance
+	 * @param b query belief
+	 * @param k number of beliefs
+	 * @param maxDistance L1 distance
+	 * @return at most k beliefs in order of increasing distance
+	 */
+	public List<BeliefPoint> getNearest(BeliefPoint b, int k, double maxDistance) {
+		assert k > 0;
+		Search search = new Search(b, k, maxDistance);
+		search.visit(root, Double.NaN);
+		return search.getPoints();
+	}
+	
+	/**
+	 * Get an upper bound on the value of a belief from the upper bounds of its k nearest beliefs. Since the optimal value
+	 * function is Lipschitz continuous, U(b') + lipschitz * |b - b'| is an upper bound on the value of b for each indexed
+	 * belief b' with upper bound U(b'), and the lowest of these bounds is returned.
+	 * @param b belief
+	 * @param k number of neighbours
+	 * @param lipschitz Lipschitz constant, see getLipschitzConstant
+	 * @return upper bound, or infinity if none of the neighbours has a finite upper bound
+	 */
+	public double getUpperBound(BeliefPoint b, int k, double lipschitz) {
+		Search search = new Search(b, k, Double.POSITIVE_INFINITY);
+		search.visit(root, Double.NaN);
+		double upperBound = Double.POSITIVE_INFINITY;
+		
+		for(int i=0; i<search.nFound; i++) {
+			double bound = search.points[i].getUpperBound();
+			
+			if(bound < Double.POSITIVE_INFINITY) {
+				upperBound = Math.min(upperBound, bound + lipschitz * search.distances[i]);
+			}
+		}
+		
+		return upperBound;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Get number of distance computations by insertions and queries
+	 * @return number of computations
+	 */
+	public long getNumDistanceComputations() {
+		return distanceComputations.sum();
+	}
+	
+	private double computeDistance(BeliefPoint x, BeliefPoint y) {
+		distanceComputations.increment();
+		return distance(x, y);
+	}
+	
+	/**
+	 * Turn a full leaf into an internal node with two leaves. The vantage point is the point farthest from the first point
+	 * of the bucket, which tends to be near the boundary of the points. If all other points have the same distance to
+	 * the vantage point the leaf cannot be split, and it stays a leaf.
+	 * @param node leaf
+	 */
+	private void split(Node node) {
+		int n = node.nPoints;
+		BeliefPoint[] points = node.points;
+		int vantageIndex = 0;
+		double maxDistance = -1.0;
+		
+		for(int i=1; i<n; i++) {
+			double d = computeDistance(points[0], points[i]);
+			
+			if(d > maxDistance) {
+				maxDistance = d;
+				vantageIndex = i;
+			}
+		}
+		
+		BeliefPoint vantagePoint = points[vantageIndex];
+		double[] distances = new double[n];
+		
+		for(int i=0; i<n; i++) {
+			distances[i] = i == vantageIndex ? 0.0 : computeDistance(vantagePoint, points[i]);
+		}
+		
+		double[] sorted = Arrays.copyOf(distances, n);
+		Arrays.sort(sorted);
+		double mu = sorted[n/2];
+		
+		if(mu == sorted[0]) {
+			// more than half of the points coincide with the vantage point, the inner child gets the coinciding points
+			int i = n/2;
+			while(i < n && sorted[i] == mu) i++;
+			if(i == n) return;
+			mu = sorted[i];
+		}
+		
+		node.vantagePoint = vantagePoint;
+		node.mu = mu;
+		node.inner = new Node(Math.max(LEAF_SIZE, n));
+		node.outer = new Node(Math.max(LEAF_SIZE, n));
+		
+		for(int i=0; i<n; i++) {
+			if(i == vantageIndex) continue;
+			
+			if(distances[i] < mu) {
+				node.innerMin = Math.min(node.innerMin, distances[i]);
+				node.innerMax = Math.max(node.innerMax, distances[i]);
+				node.inner.parentDistances[node.inner.nPoints] = distances[i];
+				node.inner.points[node.inner.nPoints++] = points[i];
+			}
+			else {
+				node.outerMin = Math.min(node.outerMin, distances[i]);
+				node.outerMax = Math.max(node.outerMax, distances[i]);
+				node.outer.parentDistances[node.outer.nPoints] = distances[i];
+				node.outer.points[node.outer.nPoints++] = points[i];
+			}
+		}
+		
+		// the vantage point is kept in the node itself, the children have at most n-1 points
+		node.points = null;
+		node.parentDistances = null;
+		node.nPoints = 0;
+	}
+	
+	/**
+	 * State of a query, which keeps the k nearest points found so far in order of increasing distance
+	 */
+	private class Search {
+		private final BeliefPoint query;
+		private final int k;
+		private double radius; // distance of the k-th point found so far, or the maximum distance
+		private BeliefPoint[] points;
+		private double[] distances;
+		private int nFound = 0;
+		
+		Search(BeliefPoint query, int k, double maxDistance) {
+			this.query = query;
+			this.k = k;
+			this.radius = maxDistance;
+			this.points = new BeliefPoint[Math.min(k, 16)];
+			this.distances = new double[points.length];
+		}
+		
+		/**
+		 * Search the points in a subtree
+		 * @param node root of the subtree
+		 * @param parentDistance distance of the query to the vantage point of the parent, NaN for the root
+		 */
+		private void visit(Node node, double parentDistance) {
+			// k points at distance 0 cannot be improved
+			if(nFound == k && radius == 0.0) return;
+			
+			if(node.isLeaf()) {
+				for(int i=0; i<node.nPoints && !(nFound == k && radius == 0.0); i++) {
+					// by the triangle inequality the distance is at least the difference of the distances to the vantage point
+					if(Math.abs(parentDistance - node.parentDistances[i]) > radius) continue;
+					
+					distanceComputations.increment();
+					offer(node.points[i], distance(query, node.points[i], radius));
+				}
+				
+				return;
+			}
+			
+			double d = computeDistance(query, node.vantagePoint);
+			offer(node.vantagePoint, d);
+			
+			// the side that contains the query is searched first, such that the radius shrinks before the other side
+			if(d < node.mu) {
+				if(d - radius <= node.innerMax && d + radius >= node.innerMin) visit(node.inner, d);
+				if(d - radius <= node.outerMax && d + radius >= node.outerMin) visit(node.outer, d);
+			}
+			else {
+				if(d - radius <= node.outerMax && d + radius >= node.outerMin) visit(node.outer, d);
+				if(d - radius <= node.innerMax && d + radius >= node.innerMin) visit(node.inner, d);
+			}
+		}
+		
+		/**
+		 * Insert a point into the sorted list of points found so far if it is within the radius. Range queries without
+		 * a limit on the number of points append the points without sorting.
+		 * @param b point
+		 * @param d distance to the query
+		 */
+		private void offer(BeliefPoint b, double d) {
+			if(d > radius) return;
+			
+			if(k == Integer.MAX_VALUE) {
+				if(nFound == points.length) {
+					points = Arrays.copyOf(points, 2*points.length);
+					distances = Arrays.copyOf(distances, points.length);
+				}
+				
+				points[nFound] = b;
+				distances[nFound] = d;
+				nFound++;
+				return;
+			}
+			
+			if(nFound == k) {
+				nFound--;
+			}
+			else if(nFound == points.length) {
+				points = Arrays.copyOf(points, Math.min(k, 2*points.length));
+				distances = Arrays.copyOf(distances, points.length);
+			}
+			
+			int i = nFound;
+			
+			while(i > 0 && distances[i-1] > d) {
+				points[i] = points[i-1];
+				distances[i] = distances[i-1];
+				i--;
+			}
+			
+			points[i] = b;
+			distances[i] = d;
+			nFound++;
+			
+			if(nFound == k) {
+				radius = distances[k-1];
+			}
+		}
+		
+		private List<BeliefPoint> getPoints() {
+			List<BeliefPoint> result = new ArrayList<BeliefPoint>(nFound);
+			
+			for(int i=0; i<nFound; i++) {
+				result.add(points[i]);
+			}
+			
+			return result;
+		}
+	}
+}
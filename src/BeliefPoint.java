@@ -1,11 +1,12 @@
 
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
+import java.util.Arrays;
 
 public class BeliefPoint {
-	private double[] belief;
+	private double[] belief; // dense belief vector, null if the belief is sparse
+	private int[] indices; // states with nonzero probability in increasing order, null if the belief is dense
+	private double[] values; // probabilities of the states in indices
+	private int nStates;
 	
 	private double admissibleCost = 0.0; // admissible cost, used by CPBVI
 	
@@ -22,60 +23,147 @@ public class BeliefPoint {
 	private int sleepTime = 0;
 	private boolean[] successors = null;
 	
-	private List<Integer> history = new ArrayList<Integer>();
+	private History history = History.EMPTY; // history that leads to the belief, shared with the beliefs it was computed from
 	
 	public BeliefPoint(double[] belief) {
 		this.belief = belief;
+		this.nStates = belief.length;
+	}
+	
+	/**
+	 * Create a sparse belief
+	 * @param nStates number of states
+	 * @param indices states with nonzero probability in increasing order
+	 * @param values probabilities of these states
+	 */
+	public BeliefPoint(int nStates, int[] indices, double[] values) {
+		assert indices.length == values.length;
+		this.nStates = nStates;
+		this.indices = indices;
+		this.values = values;
+	}
+	
+	/**
+	 * Create a belief from a dense vector, which is stored sparse if the fraction of nonzero entries is at most a threshold
+	 * @param belief belief vector, which is used directly if the belief is dense
+	 * @param densityThreshold maximum fraction of nonzero entries of a sparse belief
+	 * @return belief
+	 */
+	public static BeliefPoint create(double[] belief, double densityThreshold) {
+		int nnz = 0;
+		
+		for(int s=0; s<belief.length; s++) {
+			if(belief[s] != 0.0) nnz++;
+		}
+		
+		if(nnz > densityThreshold * belief.length) {
+			return new BeliefPoint(belief);
+		}
+		
+		int[] indices = new int[nnz];
+		double[] values = new double[nnz];
+		int k = 0;
+		
+		for(int s=0; s<belief.length; s++) {
+			if(belief[s] != 0.0) {
+				indices[k] = s;
+				values[k] = belief[s];
+				k++;
+			}
+		}
+		
+		return new BeliefPoint(belief.length, indices, values);
 	}
 	
+	/**
+	 * Get the dense belief vector. For a dense belief this is the internal array, which callers must not modify, since
+	 * beliefs are shared by caches and indices. For a sparse belief this is a new array, see getNumEntries to iterate
+	 * without copying. Use copyTo to obtain a vector that can be modified.
+	 * @return belief vector, which must be treated as read-only
+	 */
 	public double[] getBelief() {
-		return belief;
+		if(belief != null) {
+			return belief;
+		}
+		
+		double[] dense = new double[nStates];
+		copyTo(dense, 0);
+		return dense;
+	}
+	
+	/**
+	 * Write the dense belief vector into an array
+	 * @param dest destination array
+	 * @param offset position of the first entry
+	 */
+	public void copyTo(double[] dest, int offset) {
+		if(belief != null) {
+			System.arraycopy(belief, 0, dest, offset, nStates);
+			return;
+		}
+		
+		Arrays.fill(dest, offset, offset + nStates, 0.0);
+		
+		for(int k=0; k<indices.length; k++) {
+			dest[offset + indices[k]] = values[k];
+		}
 	}
 	
 	public double getBelief(int s) {
-		assert s >= 0 && s < belief.length;
-		return belief[s];
+		assert s >= 0 && s < nStates;
+		
+		if(belief != null) {
+			return belief[s];
+		}
+		
+		int k = Arrays.binarySearch(indices, s);
+		return k >= 0 ? values[k] : 0.0;
+	}
+	
+	public boolean isSparse() {
+		return belief == null;
+	}
+	
+	public int getNumStates() {
+		return nStates;
+	}
+	
+	/**
+	 * Get number of stored entries, which are all states of a dense belief and the nonzero states of a sparse belief.
+	 * Entry k has state getEntryState(k) and probability getEntryValue(k), and states increase with k.
+	 * @return number of entries
+	 */
+	public int getNumEntries() {
+		return belief != null ? nStates : indices.length;
+	}
+	
+	public int getEntryState(int k) {
+		return belief != null ? k : indices[k];
+	}
+	
+	public double getEntryValue(int k) {
+		return belief != null ? belief[k] : values[k];
 	}
 	
 	public void addToHistory(int i) {
-		history.add(i);
+		history = history.append(i);
 	}
 	
-	public List<Integer> getHistory() {
+	public History getHistory() {
 		return history;
 	}
 	
-	public void setHistory(List<Integer> history) {
+	public void setHistory(History history) {
 		this.history = history;
 	}
 	
-	public List<Integer> getHistoryCopy() {
-		List<Integer> newHistory = new ArrayList<Integer>();
-		newHistory.addAll(history);
-		return newHistory;
-	}
-	
 	public int hashCode() {
 		return history.hashCode();
 	}
 	
 	public boolean equals(Object o) {
 		if(o instanceof BeliefPoint) {
-			List<Integer> otherHistory = ((BeliefPoint) o).getHistory();
-			
-			if(history.size() != otherHistory.size()) {
-				return false;
-			}
-			else {
-				boolean isEqual = true;
-				
-				for(int i=0; i<history.size()&&isEqual; i++) {
-					isEqual = isEqual && (history.get(i)==otherHistory.get(i));
-				}
-				
-				return isEqual;
-			}
-			
+			return history.equals(((BeliefPoint) o).getHistory());
 		}
 		else {
 			return false;
@@ -85,8 +173,8 @@ public class BeliefPoint {
 	public String toString() {
 		String ret = "<BP(";
 		
-		for(int i=0; i<belief.length; i++) {
-			ret += belief[i]+",";
+		for(int i=0; i<nStates; i++) {
+			ret += getBelief(i)+",";
 		}
 		
 		return ret+")>";
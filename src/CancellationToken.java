@@ -0,0 +1,14 @@
+/**
+ * Flag that another thread sets to stop a running solver. The solver returns the best solution found so far.
+ */
+public class CancellationToken {
+	private volatile boolean cancelled = false;
+	
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
@@ -0,0 +1,309 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Backward induction for finite-horizon MDPs, which may have time-dependent rewards and transitions.
+ * The values V_t(s) = max_a R(s,a) at time t + discount * sum_sNext P(sNext | s,a) at time t * V_{t+1}(sNext) are computed
+ * for t = horizon-1 down to 0, starting from V_horizon = 0. Only the values of two consecutive stages are kept in memory,
+ * so memory use is independent of the horizon except for the policy, which can be written to a file instead.
+ */
+public class FiniteHorizonVI implements Closeable {
+	private MDP mdp;
+	private int horizon;
+	
+	private double[] value; // V_t of the stage that is being computed
+	private double[] valueNext; // V_{t+1}
+	private int[] stageActions; // greedy actions of the stage that is being computed
+	private int[] policy; // action of state s at time t at position t*nStates+s, null if the policy is written to a file
+	private RandomAccessFile policyFile = null; // stage t occupies bytes t*nStates*4 ... (t+1)*nStates*4-1 as big-endian ints
+	private ByteBuffer stageBuffer;
+	private boolean solved = false;
+	
+	private ForkJoinPool pool = null; // if null, stages are computed sequentially
+	private int chunkSize = 64; // number of states backed up by a single parallel task
+	
+	/**
+	 * Create a solver
+	 * @param mdp model
+	 * @param horizon number of decisions, at most the number of time steps if the model is time-dependent
+	 */
+	public FiniteHorizonVI(MDP mdp, int horizon) {
+		if(horizon < 0 || (mdp.isTimeDependent() && horizon > mdp.getNumTimeSteps())) {
+			throw new IllegalArgumentException("Horizon "+horizon+" is not supported by a model with "+mdp.getNumTimeSteps()+" time steps");
+		}
+		
+		this.mdp = mdp;
+		this.horizon = horizon;
+		this.value = new double[mdp.getNumStates()];
+		this.valueNext = new double[mdp.getNumStates()];
+		this.stageActions = new int[mdp.getNumStates()];
+	}
+	
+	/**
+	 * Create a solver that computes each stage in parallel using the given pool
+	 * @param mdp model
+	 * @param horizon number of decisions
+	 * @param pool fork-join pool used to back up chunks of states
+	 */
+	public FiniteHorizonVI(MDP mdp, int horizon, ForkJoinPool pool) {
+		this(mdp, horizon);
+		this.pool = pool;
+	}
+	
+	/**
+	 * Set number of states backed up by a single parallel task
+	 * @param chunkSize chunk size
+	 */
+	public void setChunkSize(int chunkSize) {
+		assert chunkSize > 0;
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * Write the policy to a file during solve instead of keeping it in memory, which requires horizon*nStates*4 bytes.
+	 * The file is overwritten and remains open until close is called.
+	 * @param filePath path of the policy file
+	 * @throws IOException
+	 */
+	public void setPolicyFile(String filePath) throws IOException {
+		close();
+		RandomAccessFile file = new RandomAccessFile(filePath, "rw");
+		file.setLength(0);
+		this.policyFile = file;
+		this.policy = null;
+		this.solved = false;
+		this.stageBuffer = ByteBuffer.allocate(this.mdp.getNumStates() * 4);
+	}
+	
+	/**
+	 * Compute the values and the policy of all stages
+	 */
+	public void solve() {
+		int nStates = this.mdp.getNumStates();
+		
+		if(policyFile == null) {
+			long size = (long) horizon * nStates;
+			
+			if(size > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException("Policy has "+size+" entries, which exceeds the maximum array size, use setPolicyFile");
+			}
+			
+			policy = new int[(int) size];
+		}
+		
+		Arrays.fill(valueNext, 0.0);
+		
+		for(int t = horizon-1; t >= 0; t--) {
+			if(pool == null) {
+				backupStates(t, 0, nStates);
+			}
+			else {
+				pool.invoke(new StageTask(t, 0, nStates));
+			}
+			
+			savePolicy(t);
+			
+			double[] swap = valueNext;
+			valueNext = value;
+			value = swap;
+		}
+		
+		solved = true;
+	}
+	
+	/**
+	 * Compute V_t and the greedy actions of the states in [sFrom, sTo) using V_{t+1} in valueNext
+	 * @param t time t
+	 * @param sFrom first state
+	 * @param sTo last state (exclusive)
+	 */
+	private void backupStates(int t, int sFrom, int sTo) {
+		int nActions = this.mdp.getNumActions();
+		
+		for(int s = sFrom; s < sTo; s++) {
+			double max = Double.NEGATIVE_INFINITY;
+			int bestAction = 0;
+			
+			for(int a = 0; a < nActions; a++) {
+				double q = this.mdp.getReward(t, s, a) + this.mdp.getDiscountFactor() * getExpectedValue(t, s, a);
+				
+				if(q > max) {
+					max = q;
+					bestAction = a;
+				}
+			}
+			
+			value[s] = max;
+			stageActions[s] = bestAction;
+		}
+	}
+	
+	/**
+	 * Compute sum_sNext P(sNext | s,a) at time t * V_{t+1}(sNext)
+	 * @param t time t
+	 * @param s state s
+	 * @param a action a
+	 * @return expected value of the next stage
+	 */
+	private double getExpectedValue(int t, int s, int a) {
+		double sum = 0.0;
+		
+		if(this.mdp.hasTimeDependentTransitions()) {
+			double[] transitionFunction = this.mdp.getTimeTransitionFunction();
+			int offset = this.mdp.getTimeTransitionOffset(t, s, a);
+			
+			for(int sNext = 0; sNext < this.mdp.getNumStates(); sNext++) {
+				sum += transitionFunction[offset+sNext] * valueNext[sNext];
+			}
+		}
+		else {
+			SparseActionMatrix transitionFunction = this.mdp.getSparseTransitionFunction();
+			
+			for(int k = transitionFunction.getRowStart(a, s); k < transitionFunction.getRowEnd(a, s); k++) {
+				sum += transitionFunction.getValue(a, k) * valueNext[transitionFunction.getColumn(a, k)];
+			}
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * Store the greedy actions of stage t in the policy array or the policy file
+	 * @param t time t
+	 */
+	private void savePolicy(int t) {
+		int nStates = this.mdp.getNumStates();
+		
+		if(policyFile == null) {
+			System.arraycopy(stageActions, 0, policy, t*nStates, nStates);
+			return;
+		}
+		
+		stageBuffer.clear();
+		stageBuffer.asIntBuffer().put(stageActions);
+		FileChannel channel = policyFile.getChannel();
+		long position = (long) t * nStates * 4;
+		
+		try {
+			while(stageBuffer.hasRemaining()) {
+				position += channel.write(stageBuffer, position);
+			}
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Get values V_0 of the first stage
+	 * @return state values
+	 */
+	public double[] getValueFunction() {
+		assert solved;
+		return valueNext;
+	}
+	
+	/**
+	 * Get greedy action of a state at time t. If the policy is stored in a file, getPolicy reads a stage more efficiently.
+	 * @param t time t
+	 * @param s state s
+	 * @return action
+	 */
+	public int getAction(int t, int s) {
+		assert solved && t<horizon && s<this.mdp.getNumStates();
+		
+		if(policyFile == null) {
+			return policy[t*this.mdp.getNumStates()+s];
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		readPolicy(buffer, ((long) t * this.mdp.getNumStates() + s) * 4);
+		return buffer.getInt(0);
+	}
+	
+	/**
+	 * Get greedy actions of all states at time t
+	 * @param t time t
+	 * @return array containing the action of each state
+	 */
+	public int[] getPolicy(int t) {
+		assert solved && t<horizon;
+		int nStates = this.mdp.getNumStates();
+		int[] actions = new int[nStates];
+		
+		if(policyFile == null) {
+			System.arraycopy(policy, t*nStates, actions, 0, nStates);
+		}
+		else {
+			ByteBuffer buffer = ByteBuffer.allocate(nStates * 4);
+			readPolicy(buffer, (long) t * nStates * 4);
+			buffer.asIntBuffer().get(actions);
+		}
+		
+		return actions;
+	}
+	
+	private void readPolicy(ByteBuffer buffer, long position) {
+		try {
+			while(buffer.hasRemaining()) {
+				int n = policyFile.getChannel().read(buffer, position);
+				
+				if(n < 0) {
+					throw new IOException("Unexpected end of the policy file");
+				}
+				
+				position += n;
+			}
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		buffer.flip();
+	}
+	
+	public int getHorizon() {
+		return horizon;
+	}
+	
+	/**
+	 * Close the policy file, after which the policy can no longer be read
+	 */
+	public void close() throws IOException {
+		if(policyFile != null) {
+			policyFile.close();
+			policyFile = null;
+			solved = false;
+		}
+	}
+	
+	private class StageTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int t;
+		private final int sFrom;
+		private final int sTo;
+		
+		StageTask(int t, int sFrom, int sTo) {
+			this.t = t;
+			this.sFrom = sFrom;
+			this.sTo = sTo;
+		}
+		
+		protected void compute() {
+			if(sTo - sFrom <= chunkSize) {
+				backupStates(t, sFrom, sTo);
+				return;
+			}
+			
+			int sMid = (sFrom + sTo) >>> 1;
+			invokeAll(new StageTask(t, sFrom, sMid), new StageTask(t, sMid, sTo));
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/**
+ * Sparse matrices with the layout of SparseActionMatrix that store their values in single precision.
+ * Values are widened to double when read, so sums over a row are still accumulated in double precision.
+ */
+public class FloatSparseActionMatrix extends SparseActionMatrix {
+	private int[] rowStart;
+	private int[] columns;
+	private float[] values;
+	
+	public FloatSparseActionMatrix(int nActions, int nRows, int nColumns, int[] rowStart, int[] columns, float[] values) {
+		super(nActions, nRows, nColumns);
+		assert rowStart.length == nActions*nRows+1 && columns.length == values.length && columns.length == rowStart[nActions*nRows];
+		this.rowStart = rowStart;
+		this.columns = columns;
+		this.values = values;
+	}
+	
+	/**
+	 * Create a single precision copy of sparse matrices, each value is rounded to the nearest float
+	 * @param m sparse matrices
+	 * @return single precision matrices with the same nonzero entries
+	 */
+	public static FloatSparseActionMatrix copyOf(SparseActionMatrix m) {
+		int nActions = m.getNumActions();
+		int nRows = m.getNumRows();
+		int[] rowStart = new int[nActions*nRows+1];
+		int[] columns = new int[m.getNumNonZeros()];
+		float[] values = new float[columns.length];
+		int n = 0;
+		
+		for(int r=0; r<nRows; r++) {
+			for(int a=0; a<nActions; a++) {
+				for(int k=m.getRowStart(a, r); k<m.getRowEnd(a, r); k++) {
+					columns[n] = m.getColumn(a, k);
+					values[n] = (float) m.getValue(a, k);
+					n++;
+				}
+				
+				rowStart[r*nActions+a+1] = n;
+			}
+		}
+		
+		return new FloatSparseActionMatrix(nActions, nRows, m.getNumColumns(), rowStart, columns, values);
+	}
+	
+	public int getRowStart(int a, int row) {
+		return rowStart[row*nActions+a];
+	}
+	
+	public int getRowEnd(int a, int row) {
+		return rowStart[row*nActions+a+1];
+	}
+	
+	public int getColumn(int a, int k) {
+		return columns[k];
+	}
+	
+	public double getValue(int a, int k) {
+		return values[k];
+	}
+	
+	public void setValue(int a, int k, double value) {
+		values[k] = (float) value;
+	}
+}
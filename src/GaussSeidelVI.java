@@ -0,0 +1,63 @@
+
+public class GaussSeidelVI extends Solver {
+	
+	private double[] qTable; // Q(s,a) at position s*nActions+a
+	private double[] value; // value[s] = max(0, max_a Q(s,a)), updated in place
+	private double threshold = 0.01;
+	
+	public GaussSeidelVI(POMDP mdp) {
+		super(mdp);
+		this.qTable = new double[this.mdp.getNumStates()*this.mdp.getNumActions()];
+		this.value = new double[this.mdp.getNumStates()];
+	}
+	
+	/**
+	 * Set threshold on the maximum change of a Q-value in a sweep
+	 * @param threshold threshold
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+	
+	public void Solve() {
+		int nActions = this.mdp.getNumActions();
+		double delta = 1;
+		int count = 0;
+		
+		while(delta > threshold) {
+			delta = 0;
+			count++;
+			beginSweep();
+			
+			for(int s = 0; s < this.mdp.getNumStates(); s++) {
+				double max = 0;
+				
+				// backups of later states in this sweep already use the new value of s
+				for(int a = 0; a < nActions; a++) {
+					double q = computeQValue(s, a, value);
+					delta = Math.max(delta, Math.abs(q - qTable[s*nActions+a]));
+					qTable[s*nActions+a] = q;
+					
+					if(max < q) {
+						max = q;
+					}
+				}
+				
+				value[s] = max;
+			}
+			
+			endSweep(count, delta, (long) this.mdp.getNumStates() * nActions);
+		}
+		
+		printQTable(qTable);
+		System.out.format("The amount of cycles was: %d%n", count);
+	}
+	
+	/**
+	 * Get Q-table
+	 * @return Q-table with Q(s,a) at position s*nActions+a
+	 */
+	public double[] getQTable() {
+		return qTable;
+	}
+}
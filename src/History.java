@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable action-observation history, stored as a chain of nodes that point to the history without the last element.
+ * Histories that are extended from the same history share their prefix, so appending an element takes constant time
+ * and memory. Each node caches its length and a 64-bit hash of the complete history, such that histories with
+ * different hashes are unequal without comparing elements, and the comparison of equal histories stops at the
+ * first shared node.
+ */
+public class History {
+	public static final History EMPTY = new History(null, -1, 0, 0L);
+	
+	private final History parent; // history without the last element, null for the empty history
+	private final int code; // last element
+	private final int length;
+	private final long hash;
+	
+	private History(History parent, int code, int length, long hash) {
+		this.parent = parent;
+		this.code = code;
+		this.length = length;
+		this.hash = hash;
+	}
+	
+	/**
+	 * Get the history extended with an element
+	 * @param code element, for instance a code created by encode
+	 * @return new history, which shares this history as prefix
+	 */
+	public History append(int code) {
+		return new History(this, code, length+1, mix(hash + (code + 1L) * 0x9E3779B97F4A7C15L));
+	}
+	
+	/**
+	 * Get the history extended with action a and observation o
+	 * @param a action a
+	 * @param o observation o
+	 * @param nObservations number of observations
+	 * @return new history
+	 */
+	public History append(int a, int o, int nObservations) {
+		return append(encode(a, o, nObservations));
+	}
+	
+	/**
+	 * Pack an action and observation into a single element
+	 * @param a action a
+	 * @param o observation o
+	 * @param nObservations number of observations
+	 * @return a*nObservations+o
+	 */
+	public static int encode(int a, int o, int nObservations) {
+		assert o >= 0 && o < nObservations;
+		return a*nObservations+o;
+	}
+	
+	public static int decodeAction(int code, int nObservations) {
+		return code / nObservations;
+	}
+	
+	public static int decodeObservation(int code, int nObservations) {
+		return code % nObservations;
+	}
+	
+	/**
+	 * Finalizer of SplitMix64, which spreads the bits of the hash
+	 * @param z value
+	 * @return mixed value
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	public int getLength() {
+		return length;
+	}
+	
+	public boolean isEmpty() {
+		return length == 0;
+	}
+	
+	/**
+	 * Get the last element
+	 * @return element
+	 */
+	public int getLast() {
+		assert length > 0;
+		return code;
+	}
+	
+	/**
+	 * Get the history without the last element
+	 * @return prefix
+	 */
+	public History getParent() {
+		assert length > 0;
+		return parent;
+	}
+	
+	/**
+	 * Get element i, which walks the chain from the last element
+	 * @param i position, 0 is the first element
+	 * @return element
+	 */
+	public int get(int i) {
+		assert i >= 0 && i < length;
+		History h = this;
+		
+		for(int k=length-1; k>i; k--) {
+			h = h.parent;
+		}
+		
+		return h.code;
+	}
+	
+	public long getHash() {
+		return hash;
+	}
+	
+	/**
+	 * Get the elements from first to last
+	 * @return array of elements
+	 */
+	public int[] toArray() {
+		int[] elements = new int[length];
+		History h = this;
+		
+		for(int i=length-1; i>=0; i--) {
+			elements[i] = h.code;
+			h = h.parent;
+		}
+		
+		return elements;
+	}
+	
+	public List<Integer> toList() {
+		List<Integer> elements = new ArrayList<Integer>(length);
+		
+		for(int code : toArray()) {
+			elements.add(code);
+		}
+		
+		return elements;
+	}
+	
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
+	}
+	
+	public boolean equals(Object o) {
+		if(!(o instanceof History)) {
+			return false;
+		}
+		
+		History h1 = this;
+		History h2 = (History) o;
+		
+		if(h1.length != h2.length || h1.hash != h2.hash) {
+			return false;
+		}
+		
+		// the chains are compared until they reach a shared node
+		while(h1 != h2) {
+			if(h1.code != h2.code) {
+				return false;
+			}
+			
+			h1 = h1.parent;
+			h2 = h2.parent;
+		}
+		
+		return true;
+	}
+	
+	public String toString() {
+		return toList().toString();
+	}
+}
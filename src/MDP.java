@@ -1,13 +1,15 @@
 
 
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
 import java.util.Random;
 
 public class MDP {
 	private String name;
 	private int nStates;
 	private int nActions;
-	private double[][] rewardFunction;
-	private double[][][] transitionFunction;
+	private double[] rewardFunction; // R(s,a) at position s*nActions+a
+	private SparseActionMatrix transitionFunction; // row s of action a contains P(sNext | s,a)
 	private double discountFactor;
 	private int initialState;
 	private double minReward = Double.POSITIVE_INFINITY;
@@ -15,22 +17,33 @@ public class MDP {
 	
 	private boolean hasTimeDependentReward = false;
 	private int T;
-	private double[][][] timeRewardFunction;
+	private double[] timeRewardFunction; // R(s,a) at time t at position (t*nStates+s)*nActions+a
 	
 	private boolean hasTimeDependentTransitions = false;
-	private double[][][][] timeTransitionFunction;
+	private double[] timeTransitionFunction; // P(sNext | s,a) at time t at position ((t*nStates+s)*nActions+a)*nStates+sNext
 	
 	public MDP(String name, int nStates, int nActions, double discountFactor, double[][] rewardFunction, double[][][] transitionFunction, int initialState) {
 		this.name = name;
 		this.nStates = nStates;
 		this.nActions = nActions;
-		this.transitionFunction = transitionFunction;
+		this.transitionFunction = SparseActionMatrix.fromTransitionFunction(transitionFunction);
 		this.discountFactor = discountFactor;
 		this.initialState = initialState;
 		setRewardFunction(rewardFunction);
 	}
 	
 	public MDP(String name, int nStates, int nActions, double discountFactor, double[][][] rewardFunction, double[][][] transitionFunction, int initialState) {
+		this.name = name;
+		this.nStates = nStates;
+		this.nActions = nActions;
+		this.transitionFunction = SparseActionMatrix.fromTransitionFunction(transitionFunction);
+		this.discountFactor = discountFactor;
+		this.initialState = initialState;
+		setRewardFunction(rewardFunction);
+	}
+	
+	public MDP(String name, int nStates, int nActions, double discountFactor, double[][] rewardFunction, SparseActionMatrix transitionFunction, int initialState) {
+		assert transitionFunction.getNumActions() == nActions && transitionFunction.getNumRows() == nStates;
 		this.name = name;
 		this.nStates = nStates;
 		this.nActions = nActions;
@@ -48,10 +61,7 @@ public class MDP {
 		this.initialState = initialState;
 		setRewardFunction(rewardFunction);
 		
-		this.transitionFunction = null;
-		this.timeTransitionFunction = transitionFunction;
-		this.T = transitionFunction.length;
-		this.hasTimeDependentTransitions = true;
+		setTimeTransitionFunction(transitionFunction);
 	}
 	
 	public MDP(String name, int nStates, int nActions, double discountFactor, double[][][] rewardFunction, double[][][][] transitionFunction, int initialState) {
@@ -62,10 +72,7 @@ public class MDP {
 		this.initialState = initialState;
 		setRewardFunction(rewardFunction);
 		
-		this.transitionFunction = null;
-		this.timeTransitionFunction = transitionFunction;
-		this.T = transitionFunction.length;
-		this.hasTimeDependentTransitions = true;
+		setTimeTransitionFunction(transitionFunction);
 	}
 	
 	/**
@@ -73,13 +80,14 @@ public class MDP {
 	 * @param rewardFunction reward function
 	 */
 	public void setRewardFunction(double[][] rewardFunction) {
-		this.rewardFunction = rewardFunction;
+		this.rewardFunction = new double[nStates*nActions];
 		
 		minReward = Double.POSITIVE_INFINITY;
 		maxReward = Double.NEGATIVE_INFINITY;
 		
 		for(int s=0; s<nStates; s++) {
 			for(int a=0; a<nActions; a++) {
+				this.rewardFunction[s*nActions+a] = rewardFunction[s][a];
 				minReward = Math.min(minReward, rewardFunction[s][a]);
 				maxReward = Math.max(maxReward, rewardFunction[s][a]);
 			}
@@ -91,8 +99,8 @@ public class MDP {
 	 * @param rewardFunction reward function
 	 */
 	public void setRewardFunction(double[][][] timeRewardFunction) {
-		this.timeRewardFunction = timeRewardFunction;
 		this.T = timeRewardFunction.length;
+		this.timeRewardFunction = new double[getFlatSize((long) T * nStates * nActions)];
 		this.hasTimeDependentReward = true;
 		
 		minReward = Double.POSITIVE_INFINITY;
@@ -101,6 +109,7 @@ public class MDP {
 		for(int t=0; t<T; t++) {
 			for(int s=0; s<nStates; s++) {
 				for(int a=0; a<nActions; a++) {
+					this.timeRewardFunction[(t*nStates+s)*nActions+a] = timeRewardFunction[t][s][a];
 					minReward = Math.min(minReward, timeRewardFunction[t][s][a]);
 					maxReward = Math.max(maxReward, timeRewardFunction[t][s][a]);
 				}
@@ -109,13 +118,31 @@ public class MDP {
 	}
 	
 	/**
-	 * Get reward function
-	 * @return reward function
+	 * Get reward function as an array indexed as [s][a]. Since rewards are stored in a flat array, the returned array is a
+	 * copy, and writing to it does not change the model. Use getReward or getRewardView to read the rewards without
+	 * copying, and setRewardFunction to change them.
+	 * @return copy of the reward function
 	 */
+	@Deprecated
 	public double[][] getRewardFunction() {
+		double[][] rewardFunction = new double[nStates][nActions];
+		
+		for(int s=0; s<nStates; s++) {
+			System.arraycopy(this.rewardFunction, s*nActions, rewardFunction[s], 0, nActions);
+		}
+		
 		return rewardFunction;
 	}
 	
+	/**
+	 * Get read-only view of the stationary reward function, without copying
+	 * @return buffer containing R(s,a) at position s*nActions+a
+	 */
+	public DoubleBuffer getRewardView() {
+		assert !hasTimeDependentReward;
+		return DoubleBuffer.wrap(rewardFunction).asReadOnlyBuffer();
+	}
+	
 	/**
 	 * Get reward R(s,a)
 	 * @param s state s
@@ -124,7 +151,7 @@ public class MDP {
 	 */
 	public double getReward(int s, int a) {
 		assert s<nStates && a<nActions && !hasTimeDependentReward;
-		return rewardFunction[s][a];
+		return rewardFunction[s*nActions+a];
 	}
 	
 	/**
@@ -135,8 +162,8 @@ public class MDP {
 	 * @return reward R(s,a) at time t
 	 */
 	public double getReward(int t, int s, int a) {
-		assert s<nStates && a<nActions && t<T;
-		return hasTimeDependentReward ? timeRewardFunction[t][s][a] : rewardFunction[s][a];
+		assert s<nStates && a<nActions && (t<T || !isTimeDependent());
+		return hasTimeDependentReward ? timeRewardFunction[(t*nStates+s)*nActions+a] : rewardFunction[s*nActions+a];
 	}
 	
 	/**
@@ -160,6 +187,14 @@ public class MDP {
 	 * @param transitionFunction
 	 */
 	public void setTransitionFunction(double[][][] transitionFunction) {
+		this.transitionFunction = SparseActionMatrix.fromTransitionFunction(transitionFunction);
+	}
+	
+	/**
+	 * Set sparse transition function
+	 * @param transitionFunction sparse transition function
+	 */
+	public void setTransitionFunction(SparseActionMatrix transitionFunction) {
 		this.transitionFunction = transitionFunction;
 	}
 	
@@ -172,7 +207,7 @@ public class MDP {
 	 */
 	public double getTransitionProbability(int s, int a, int sNext) {
 		assert s<nStates && a<nActions && sNext<nStates && !hasTimeDependentTransitions;
-		return transitionFunction[s][a][sNext];
+		return transitionFunction.get(a, s, sNext);
 	}
 	
 	/**
@@ -184,41 +219,192 @@ public class MDP {
 	 * @return probability P(sNext | s,a)
 	 */
 	public double getTransitionProbability(int t, int s, int a, int sNext) {
-		assert s<nStates && a<nActions && sNext<nStates && t<T;
-		return hasTimeDependentTransitions ? timeTransitionFunction[t][s][a][sNext] : transitionFunction[s][a][sNext];
+		assert s<nStates && a<nActions && sNext<nStates && (t<T || !isTimeDependent());
+		return hasTimeDependentTransitions ? timeTransitionFunction[((t*nStates+s)*nActions+a)*nStates+sNext] : transitionFunction.get(a, s, sNext);
+	}
+	
+	/**
+	 * Get position of the distribution P(. | s,a) at time t in the array returned by getTimeTransitionFunction.
+	 * The probabilities P(sNext | s,a) occupy the nStates consecutive positions starting at this position.
+	 * @param t time t
+	 * @param s state s
+	 * @param a action a
+	 * @return position of P(0 | s,a) at time t
+	 */
+	public int getTimeTransitionOffset(int t, int s, int a) {
+		assert s<nStates && a<nActions && t<T && hasTimeDependentTransitions;
+		return ((t*nStates+s)*nActions+a)*nStates;
+	}
+	
+	/**
+	 * Check whether the transition function depends on time
+	 * @return true if the transitions are given by getTimeTransitionFunction instead of getSparseTransitionFunction
+	 */
+	public boolean hasTimeDependentTransitions() {
+		return hasTimeDependentTransitions;
+	}
+	
+	/**
+	 * Check whether the reward or transition function depends on time
+	 * @return true if the model is time-dependent
+	 */
+	public boolean isTimeDependent() {
+		return hasTimeDependentReward || hasTimeDependentTransitions;
+	}
+	
+	/**
+	 * Get number of time steps of the time-dependent reward and transition functions
+	 * @return number of time steps, or 0 if the model is stationary
+	 */
+	public int getNumTimeSteps() {
+		return T;
+	}
+	
+	/**
+	 * Get time-dependent transition function, stored in a single array. The array is the model itself, not a copy.
+	 * @return transition function, see getTimeTransitionOffset for the layout
+	 */
+	public double[] getTimeTransitionFunction() {
+		return timeTransitionFunction;
 	}
 	
 	/**
-	 * Get transition function
-	 * @return transition function
+	 * Copy a time-dependent transition function indexed as [t][s][a][sNext] into a single array
+	 * @param transitionFunction transition function
 	 */
+	private void setTimeTransitionFunction(double[][][][] transitionFunction) {
+		this.transitionFunction = null;
+		this.T = transitionFunction.length;
+		this.timeTransitionFunction = new double[getFlatSize((long) T * nStates * nActions * nStates)];
+		this.hasTimeDependentTransitions = true;
+		
+		for(int t=0; t<T; t++) {
+			for(int s=0; s<nStates; s++) {
+				for(int a=0; a<nActions; a++) {
+					System.arraycopy(transitionFunction[t][s][a], 0, timeTransitionFunction, getTimeTransitionOffset(t, s, a), nStates);
+				}
+			}
+		}
+	}
+	
+	private static int getFlatSize(long size) {
+		if(size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Model has "+size+" entries, which exceeds the maximum array size");
+		}
+		
+		return (int) size;
+	}
+	
+	/**
+	 * Get transition function as a dense array indexed as [s][a][sNext]. Since transitions are stored sparse, each call
+	 * allocates a dense copy of nStates x nActions x nStates doubles, which may not fit in memory for large models, and
+	 * writing to it does not change the model. Use getSparseTransitionFunction to access the transitions without copying.
+	 * @return copy of the transition function
+	 */
+	@Deprecated
 	public double[][][] getTransitionFunction() {
+		return transitionFunction == null ? null : transitionFunction.toTransitionFunction();
+	}
+	
+	/**
+	 * Get sparse transition function, where row s of action a contains the nonzero P(sNext | s,a)
+	 * @return sparse transition function
+	 */
+	public SparseActionMatrix getSparseTransitionFunction() {
 		return transitionFunction;
 	}
 	
+	/**
+	 * Get predecessor lists of the transition graph. Row sNext of the returned single-action matrix contains
+	 * the states s for which P(sNext | s,a) > 0 for some a, with value max_a P(sNext | s,a).
+	 * @return predecessor lists
+	 */
+	public SparseActionMatrix getPredecessorFunction() {
+		assert !hasTimeDependentTransitions;
+		int[] rowStart = new int[nStates+1];
+		int[] mark = new int[nStates];
+		Arrays.fill(mark, -1);
+		
+		// count distinct predecessors of each state
+		for(int s=0; s<nStates; s++) {
+			for(int a=0; a<nActions; a++) {
+				for(int k=transitionFunction.getRowStart(a, s); k<transitionFunction.getRowEnd(a, s); k++) {
+					int sNext = transitionFunction.getColumn(a, k);
+					
+					if(mark[sNext] != s) {
+						mark[sNext] = s;
+						rowStart[sNext+1]++;
+					}
+				}
+			}
+		}
+		
+		for(int sNext=0; sNext<nStates; sNext++) {
+			rowStart[sNext+1] += rowStart[sNext];
+		}
+		
+		// fill the lists, visiting s in increasing order keeps each list sorted
+		int[] predecessors = new int[rowStart[nStates]];
+		double[] probabilities = new double[rowStart[nStates]];
+		int[] fill = Arrays.copyOf(rowStart, nStates);
+		int[] current = new int[nStates];
+		Arrays.fill(mark, -1);
+		
+		for(int s=0; s<nStates; s++) {
+			for(int a=0; a<nActions; a++) {
+				for(int k=transitionFunction.getRowStart(a, s); k<transitionFunction.getRowEnd(a, s); k++) {
+					int sNext = transitionFunction.getColumn(a, k);
+					double p = transitionFunction.getValue(a, k);
+					
+					if(mark[sNext] != s) {
+						mark[sNext] = s;
+						current[sNext] = fill[sNext]++;
+						predecessors[current[sNext]] = s;
+						probabilities[current[sNext]] = p;
+					}
+					else {
+						probabilities[current[sNext]] = Math.max(probabilities[current[sNext]], p);
+					}
+				}
+			}
+		}
+		
+		return new SparseActionMatrix(1, nStates, nStates, rowStart, predecessors, probabilities);
+	}
+	
 	/**
 	 * Add random noise to the transition model
 	 * @param rnd random generator
 	 * @param scalar scalar which is multiplied by the random noise in [0,1]
 	 */
 	public void addTransitionNoise(Random rnd, double scalar) {
+		// a transition function that is mapped from a file is copied to the heap before it is modified
+		if(transitionFunction.isReadOnly()) {
+			transitionFunction = SparseActionMatrix.copyOf(transitionFunction);
+		}
+		
 		for(int s=0; s<nStates; s++) {
 			for(int a=0; a<nActions; a++) {
 				double probSum = 0.0;
+				int rowStart = transitionFunction.getRowStart(a, s);
+				int rowEnd = transitionFunction.getRowEnd(a, s);
 				
 				// add some noise to transitions with non-zero probability and keep track of total sum
-				for(int sNext=0; sNext<nStates; sNext++) {
-					if(transitionFunction[s][a][sNext] > 0.0001) {
+				for(int k=rowStart; k<rowEnd; k++) {
+					double p = transitionFunction.getValue(a, k);
+					
+					if(p > 0.0001) {
 						double noise = rnd.nextDouble() * scalar;
-						transitionFunction[s][a][sNext] += noise;
+						p += noise;
+						transitionFunction.setValue(a, k, p);
 					}
 					
-					probSum += transitionFunction[s][a][sNext];
+					probSum += p;
 				}
 				
 				// normalize
-				for(int sNext=0; sNext<nStates; sNext++) {
-					transitionFunction[s][a][sNext] = transitionFunction[s][a][sNext] / probSum;
+				for(int k=rowStart; k<rowEnd; k++) {
+					transitionFunction.setValue(a, k, transitionFunction.getValue(a, k) / probSum);
 				}
 			}
 		}
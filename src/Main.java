@@ -1,11 +1,24 @@
+import java.io.IOException;
 
 public class Main {
-	public static void main(String[] args) {
-		POMDP pomdp = ParsePOMDP.readPOMDP("domains/hallway2.POMDP");
-		//POMDP pomdp = ParsePOMDP.readPOMDP("domains/tiger.aaai.POMDP");
-		//POMDP pomdp = ParsePOMDP.readPOMDP("domains/saci-s100-a10-z31.POMDP");
+	public static void main(String[] args) throws IOException {
+		String domain = "domains/hallway2.POMDP";
+		//String domain = "domains/tiger.aaai.POMDP";
+		//String domain = "domains/saci-s100-a10-z31.POMDP";
+		
+		// the text file is only parsed if the binary copy next to it is missing or older
+		POMDP pomdp = POMDPBinaryFile.readCached(domain, domain + ".bin");
 		VI vi = new VI(pomdp);
 		vi.Solve();
+		
+		if(args.length > 0 && args[0].equals("-float")) {
+			// solve again using single precision probabilities and Q-values, and compare with the double precision run
+			pomdp.convertToSinglePrecision();
+			VI viFloat = new VI(pomdp);
+			viFloat.setSinglePrecision(true);
+			viFloat.Solve();
+			System.out.format("Maximum value error of the single precision run: %e%n", viFloat.getMaxValueError(vi.getValueFunction()));
+		}
 		// pomdp.getTransitionProbability(s, a, sNext);
 		// pomdp.getReward(s, a)
 		// pomdp.getNumStates()
@@ -0,0 +1,47 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Sparse matrices that read their compressed rows directly from buffers, for instance views of a memory-mapped file
+ */
+public class MappedSparseActionMatrix extends SparseActionMatrix {
+	private IntBuffer[] rowStart;
+	private IntBuffer[] columns;
+	private DoubleBuffer[] values;
+	
+	public MappedSparseActionMatrix(int nActions, int nRows, int nColumns, IntBuffer[] rowStart, IntBuffer[] columns, DoubleBuffer[] values) {
+		super(nActions, nRows, nColumns);
+		assert rowStart.length == nActions && columns.length == nActions && values.length == nActions;
+		this.rowStart = rowStart;
+		this.columns = columns;
+		this.values = values;
+	}
+	
+	public int getRowStart(int a, int row) {
+		return rowStart[a].get(row);
+	}
+	
+	public int getRowEnd(int a, int row) {
+		return rowStart[a].get(row+1);
+	}
+	
+	public int getColumn(int a, int k) {
+		return columns[a].get(k);
+	}
+	
+	public double getValue(int a, int k) {
+		return values[a].get(k);
+	}
+	
+	public boolean isReadOnly() {
+		return values.length > 0 && values[0].isReadOnly();
+	}
+	
+	public void setValue(int a, int k, double value) {
+		if(values[a].isReadOnly()) {
+			throw new UnsupportedOperationException("Sparse matrices mapped from a read-only file cannot be modified");
+		}
+		
+		values[a].put(k, value);
+	}
+}
@@ -0,0 +1,382 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Online planner based on POMCP (Silver and Veness, 2010), which selects actions by Monte Carlo tree search from a
+ * particle belief. Simulations draw a state from the belief and follow UCB1 in the tree, and a uniformly random
+ * rollout policy below it. Transitions and observations are drawn from alias tables, so a simulation step takes
+ * constant time regardless of the number of states.
+ *
+ * Trees are stored in preallocated node pools, where node n owns the action entries n*nActions ... (n+1)*nActions-1,
+ * and the children of an action entry are a linked list of nodes with their observations. A new tree is built for
+ * each decision. With a pool, several independent trees are searched in parallel and their root statistics are
+ * combined (root parallelization).
+ */
+public class POMCP {
+	private POMDP pomdp;
+	private AliasTable transitions;
+	private AliasTable observations;
+	private SplittableRandom rnd;
+	
+	private long timeBudgetMillis = 100;
+	private int maxSimulations = -1; // if negative, the number of simulations is only limited by the time budget
+	private int nParticles = 1000;
+	private int maxNodes = 100000;
+	private double explorationConstant;
+	private int maxDepth;
+	
+	private ForkJoinPool pool = null; // if null, a single tree is searched
+	private int nTrees = 1;
+	private SearchTree[] trees;
+	
+	private ParticleBelief belief;
+	private long lastSimulations = 0;
+	private int particleDeprivations = 0;
+	
+	/**
+	 * Create a planner, which starts from particles drawn from the initial belief. The exploration constant is set to
+	 * the reward range and the search depth to the number of steps after which the discount is below 0.01, at most 100.
+	 * @param pomdp model with stationary rewards and transitions
+	 * @param seed seed of the random generator
+	 */
+	public POMCP(POMDP pomdp, long seed) {
+		if(pomdp.isTimeDependent()) {
+			throw new IllegalArgumentException("POMCP requires a stationary model");
+		}
+		
+		this.pomdp = pomdp;
+		this.transitions = new AliasTable(pomdp.getSparseTransitionFunction());
+		this.observations = new AliasTable(pomdp.getSparseObservationFunction());
+		this.rnd = new SplittableRandom(seed);
+		this.explorationConstant = Math.max(pomdp.getMaxReward() - pomdp.getMinReward(), 1e-6);
+		
+		double discount = pomdp.getDiscountFactor();
+		this.maxDepth = discount < 1.0 ? (int) Math.min(100, Math.ceil(Math.log(0.01) / Math.log(discount))) : 100;
+		
+		reset();
+	}
+	
+	/**
+	 * Create a planner that searches one tree per parallel task, with independent random streams
+	 * @param pomdp model
+	 * @param seed seed of the random generator
+	 * @param pool fork-join pool
+	 * @param nTrees number of trees searched in parallel
+	 */
+	public POMCP(POMDP pomdp, long seed, ForkJoinPool pool, int nTrees) {
+		this(pomdp, seed);
+		assert nTrees > 0;
+		this.pool = pool;
+		this.nTrees = nTrees;
+	}
+	
+	/**
+	 * Set wall-clock budget of each decision
+	 * @param timeBudgetMillis budget in milliseconds
+	 */
+	public void setTimeBudget(long timeBudgetMillis) {
+		this.timeBudgetMillis = timeBudgetMillis;
+	}
+	
+	/**
+	 * Set maximum number of simulations of each tree per decision, which makes decisions reproducible for a seed
+	 * @param maxSimulations number of simulations, or a negative value to use only the time budget
+	 */
+	public void setMaxSimulations(int maxSimulations) {
+		this.maxSimulations = maxSimulations;
+	}
+	
+	/**
+	 * Set number of particles of the belief, which takes effect at the next reset
+	 * @param nParticles number of particles
+	 */
+	public void setNumParticles(int nParticles) {
+		assert nParticles > 0;
+		this.nParticles = nParticles;
+	}
+	
+	/**
+	 * Set capacity of the node pool of each tree. When the pool is full, simulations continue with rollouts below the tree.
+	 * @param maxNodes number of nodes
+	 */
+	public void setMaxNodes(int maxNodes) {
+		assert maxNodes > 0;
+		this.maxNodes = maxNodes;
+		this.trees = null;
+	}
+	
+	public void setExplorationConstant(double explorationConstant) {
+		this.explorationConstant = explorationConstant;
+	}
+	
+	/**
+	 * Set number of steps of a simulation, including the rollout
+	 * @param maxDepth depth
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+	
+	/**
+	 * Replace the belief by particles drawn from the initial belief
+	 */
+	public void reset() {
+		belief = ParticleBelief.fromBelief(pomdp.getInitialBelief(), nParticles, rnd);
+	}
+	
+	/**
+	 * Search from the current belief until the time budget or the maximum number of simulations is used up
+	 * @return action with the highest estimated value at the root
+	 */
+	public int selectAction() {
+		int nActions = pomdp.getNumActions();
+		long deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+		
+		if(trees == null) {
+			trees = new SearchTree[nTrees];
+			
+			for(int i = 0; i < nTrees; i++) {
+				trees[i] = new SearchTree();
+			}
+		}
+		
+		// streams are split in tree order, so a decision with a simulation limit does not depend on the scheduling
+		for(SearchTree tree : trees) {
+			tree.rnd = rnd.split();
+		}
+		
+		if(pool == null || nTrees == 1) {
+			for(SearchTree tree : trees) {
+				tree.search(deadline);
+			}
+		}
+		else {
+			RecursiveAction[] tasks = new RecursiveAction[nTrees];
+			
+			for(int i = 0; i < nTrees; i++) {
+				final SearchTree tree = trees[i];
+				tasks[i] = new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+					
+					protected void compute() {
+						tree.search(deadline);
+					}
+				};
+			}
+			
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				
+				protected void compute() {
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
+		}
+		
+		// combine the root statistics of the trees, weighting the value of each tree by its visit count
+		long[] visits = new long[nActions];
+		double[] valueSum = new double[nActions];
+		lastSimulations = 0;
+		
+		for(SearchTree tree : trees) {
+			lastSimulations += tree.nodeVisits[0];
+			
+			for(int a = 0; a < nActions; a++) {
+				visits[a] += tree.actionVisits[a];
+				valueSum[a] += tree.actionVisits[a] * tree.actionValue[a];
+			}
+		}
+		
+		int best = 0;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		
+		for(int a = 0; a < nActions; a++) {
+			if(visits[a] > 0 && valueSum[a] / visits[a] > bestValue) {
+				bestValue = valueSum[a] / visits[a];
+				best = a;
+			}
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Update the particle belief after executing a and observing o. If none of the particles is consistent with o,
+	 * the particles are reinvigorated from the exact successor of the particle belief, which keeps only states that are
+	 * consistent with o. The particles are drawn from the initial belief if no transition of a particle explains o.
+	 * @param a action a
+	 * @param o observation o
+	 */
+	public void update(int a, int o) {
+		ParticleBelief successor = belief.update(pomdp, transitions, a, o, rnd);
+		
+		if(successor == null) {
+			particleDeprivations++;
+			successor = belief.reinvigorate(pomdp, a, o, rnd);
+		}
+		
+		if(successor == null) {
+			reset();
+		}
+		else {
+			belief = successor;
+		}
+	}
+	
+	public ParticleBelief getBelief() {
+		return belief;
+	}
+	
+	/**
+	 * Get number of updates in which none of the particles was consistent with the observation
+	 * @return number of reinvigorations
+	 */
+	public int getNumParticleDeprivations() {
+		return particleDeprivations;
+	}
+	
+	/**
+	 * Get number of simulations of the last decision, summed over the trees
+	 * @return number of simulations
+	 */
+	public long getNumSimulations() {
+		return lastSimulations;
+	}
+	
+	/**
+	 * Search tree with its own node pool and random stream
+	 */
+	private class SearchTree {
+		private int nActions = pomdp.getNumActions();
+		private int[] nodeVisits = new int[maxNodes];
+		private int[] observation = new int[maxNodes]; // observation that leads from the parent action to the node
+		private int[] nextSibling = new int[maxNodes]; // next child of the same parent action, or -1
+		private int[] actionVisits = new int[maxNodes*nActions];
+		private double[] actionValue = new double[maxNodes*nActions]; // mean return of the simulations through the action
+		private int[] firstChild = new int[maxNodes*nActions]; // first child of the action entry, or -1
+		private int nNodes = 0;
+		private SplittableRandom rnd;
+		
+		private void search(long deadline) {
+			nNodes = 0;
+			newNode(-1);
+			int simulations = 0;
+			
+			while((maxSimulations < 0 || simulations < maxSimulations) && (System.nanoTime() - deadline < 0 || simulations == 0)) {
+				simulate(belief.sample(rnd), 0, 0);
+				simulations++;
+			}
+		}
+		
+		private int newNode(int o) {
+			int node = nNodes++;
+			nodeVisits[node] = 0;
+			observation[node] = o;
+			nextSibling[node] = -1;
+			Arrays.fill(actionVisits, node*nActions, (node+1)*nActions, 0);
+			Arrays.fill(actionValue, node*nActions, (node+1)*nActions, 0.0);
+			Arrays.fill(firstChild, node*nActions, (node+1)*nActions, -1);
+			return node;
+		}
+		
+		/**
+		 * Simulate from state s in a node and update the statistics along the path
+		 * @param s state s
+		 * @param node node
+		 * @param depth depth of the node
+		 * @return discounted return of the simulation
+		 */
+		private double simulate(int s, int node, int depth) {
+			if(depth >= maxDepth) return 0.0;
+			
+			int a = selectUCB(node);
+			int entry = node*nActions+a;
+			int sNext = transitions.sample(a, s, rnd);
+			int o = observations.sample(a, sNext, rnd);
+			double r = pomdp.getReward(s, a);
+			
+			int child = firstChild[entry];
+			
+			while(child != -1 && observation[child] != o) {
+				child = nextSibling[child];
+			}
+			
+			double total;
+			
+			if(child != -1) {
+				total = r + pomdp.getDiscountFactor() * simulate(sNext, child, depth+1);
+			}
+			else {
+				// the new node is added to the tree and evaluated by a rollout
+				if(nNodes < maxNodes) {
+					child = newNode(o);
+					nextSibling[child] = firstChild[entry];
+					firstChild[entry] = child;
+				}
+				
+				total = r + pomdp.getDiscountFactor() * rollout(sNext, depth+1);
+			}
+			
+			nodeVisits[node]++;
+			actionVisits[entry]++;
+			actionValue[entry] += (total - actionValue[entry]) / actionVisits[entry];
+			return total;
+		}
+		
+		/**
+		 * Select an untried action, or the action that maximizes the UCB1 score
+		 * @param node node
+		 * @return action
+		 */
+		private int selectUCB(int node) {
+			int offset = rnd.nextInt(nActions);
+			
+			for(int i = 0; i < nActions; i++) {
+				int a = (offset + i) % nActions;
+				
+				if(actionVisits[node*nActions+a] == 0) {
+					return a;
+				}
+			}
+			
+			double logVisits = Math.log(nodeVisits[node]);
+			int best = 0;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			
+			for(int a = 0; a < nActions; a++) {
+				int entry = node*nActions+a;
+				double score = actionValue[entry] + explorationConstant * Math.sqrt(logVisits / actionVisits[entry]);
+				
+				if(score > bestScore) {
+					bestScore = score;
+					best = a;
+				}
+			}
+			
+			return best;
+		}
+		
+		/**
+		 * Follow the uniformly random policy from state s until the maximum depth
+		 * @param s state s
+		 * @param depth depth of s
+		 * @return discounted return of the rollout
+		 */
+		private double rollout(int s, int depth) {
+			double total = 0.0;
+			double discount = 1.0;
+			
+			for(int d = depth; d < maxDepth; d++) {
+				int a = rnd.nextInt(nActions);
+				total += discount * pomdp.getReward(s, a);
+				discount *= pomdp.getDiscountFactor();
+				s = transitions.sample(a, s, rnd);
+			}
+			
+			return total;
+		}
+	}
+}
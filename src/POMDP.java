@@ -1,17 +1,42 @@
 
 
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
 
 public class POMDP extends MDP {
+	private static final int BATCH_BELIEF_BLOCK = 64; // number of beliefs in a block of updateBeliefs
+	private static final int BATCH_STATE_BLOCK = 256; // number of transition rows in a block of updateBeliefs
+	private static final double DEFAULT_SPARSE_BELIEF_DENSITY = 0.25;
+	
 	private int nObservations;
-	private double[][][] observationFunction;
+	private SparseActionMatrix observationFunction; // row sNext of action a contains P(o | a,sNext)
 	private BeliefPoint b0;
+	private double sparseBeliefDensity = DEFAULT_SPARSE_BELIEF_DENSITY; // beliefs with at most this fraction of nonzeros are sparse
+	private BeliefCache successorCache = null;
+	private LongAdder beliefPreparations = new LongAdder(); // number of prepareBelief calls
+	private LongAdder beliefUpdates = new LongAdder(); // number of updateBelief calls, a batch counts one call per belief
+	
+	// scratch space of the predicted beliefs, one per thread since beliefs may be updated concurrently
+	private final ThreadLocal<SparseAccumulator> accumulators = new ThreadLocal<SparseAccumulator>() {
+		protected SparseAccumulator initialValue() {
+			return new SparseAccumulator(getNumStates());
+		}
+	};
 	
 	public POMDP(String name, int nStates, int nActions, int nObservations, double discountFactor, double[][] rewardFunction, double[][][] transitionFunction, double[][][] observationFunction, BeliefPoint b0) {
 		super(name, nStates, nActions, discountFactor, rewardFunction, transitionFunction, 0);
 		this.nObservations = nObservations;
+		this.observationFunction = SparseActionMatrix.fromObservationFunction(observationFunction, nObservations);
+		this.b0 = compactBelief(b0);
+	}
+	
+	public POMDP(String name, int nStates, int nActions, int nObservations, double discountFactor, double[][] rewardFunction, SparseActionMatrix transitionFunction, SparseActionMatrix observationFunction, BeliefPoint b0) {
+		super(name, nStates, nActions, discountFactor, rewardFunction, transitionFunction, 0);
+		assert observationFunction.getNumActions() == nActions && observationFunction.getNumRows() == nStates && observationFunction.getNumColumns() == nObservations;
+		this.nObservations = nObservations;
 		this.observationFunction = observationFunction;
-		this.b0 = b0;
+		this.b0 = compactBelief(b0);
 	}
 	
 	public POMDP(int nStates, int nActions, int nObservations, double discountFactor, Random rnd) {		
@@ -22,7 +47,7 @@ public class POMDP extends MDP {
 		// create a randomly generated POMDP
 		double[][] rewardFunction = new double[nStates][nActions];
 		double[][][] transitionFunction = new double[nStates][nActions][nStates];
-		observationFunction = new double[nActions][nStates][nObservations];
+		double[][][] observationFunction = new double[nActions][nStates][nObservations];
 		
 		// generate reward function
 		for(int s=0; s<nStates; s++) {
@@ -55,6 +80,8 @@ public class POMDP extends MDP {
 			}
 		}
 		
+		this.observationFunction = SparseActionMatrix.fromObservationFunction(observationFunction, nObservations);
+		
 		// initialize uniform initial belief
 		double[] beliefEntries = new double[nStates];
 		for(int s=0; s<nStates; s++) {
@@ -86,67 +113,454 @@ public class POMDP extends MDP {
 	
 	public double getObservationProbability(int a, int sNext, int o) {
 		assert a<this.getNumActions() && sNext<this.getNumStates() && o<nObservations;
-		return observationFunction[a][sNext][o];
+		return observationFunction.get(a, sNext, o);
 	}
 	
+	/**
+	 * Get observation function as a dense array indexed as [a][sNext][o]. Each call allocates a dense copy, and writing
+	 * to it does not change the model. Use getSparseObservationFunction to access the observations without copying.
+	 * @return copy of the observation function
+	 */
+	@Deprecated
 	public double[][][] getObservationFunction() {
+		return observationFunction.toObservationFunction();
+	}
+	
+	/**
+	 * Get sparse observation function, where row sNext of action a contains the nonzero P(o | a,sNext)
+	 * @return sparse observation function
+	 */
+	public SparseActionMatrix getSparseObservationFunction() {
 		return observationFunction;
 	}
 	
+	/**
+	 * Set the density below which beliefs computed by updateBelief are stored sparse. A density of 0 makes all
+	 * beliefs with nonzero entries dense, and 1 makes all beliefs sparse.
+	 * @param sparseBeliefDensity maximum fraction of nonzero entries of a sparse belief
+	 */
+	public void setSparseBeliefDensity(double sparseBeliefDensity) {
+		this.sparseBeliefDensity = sparseBeliefDensity;
+	}
+	
+	public double getSparseBeliefDensity() {
+		return sparseBeliefDensity;
+	}
+	
+	/**
+	 * Create a belief from a dense vector, which is stored sparse if its density is at most the sparse belief density
+	 * @param belief belief vector
+	 * @return belief
+	 */
+	public BeliefPoint createBelief(double[] belief) {
+		return BeliefPoint.create(belief, sparseBeliefDensity);
+	}
+	
+	/**
+	 * Convert a dense belief to a sparse belief if its density is at most the sparse belief density
+	 * @param b belief
+	 * @return b if it stays dense, otherwise a sparse copy
+	 */
+	private BeliefPoint compactBelief(BeliefPoint b) {
+		if(b.isSparse()) return b;
+		
+		BeliefPoint sparse = createBelief(b.getBelief());
+		return sparse.isSparse() ? sparse : b;
+	}
+	
 	public BeliefPoint getInitialBelief() {
 		return b0;
 	}
 	
 	public void prepareBelief(BeliefPoint b) {
+		beliefPreparations.increment();
 		if(b.hasActionObservationProbabilities()) return;
 		
 		double[][] aoProbs = new double[this.getNumActions()][nObservations];
+		SparseAccumulator predicted = accumulators.get();
 		
 		for(int a=0; a<this.getNumActions(); a++) {
-			for(int o=0; o<nObservations; o++) {
-				double prob = 0.0;
+			predictBelief(b, a, predicted);
+			
+			for(int i=0; i<predicted.getNumEntries(); i++) {
+				int sNext = predicted.getEntryIndex(i);
+				double p = predicted.getEntryValue(i);
+				if(p == 0.0) continue;
 				
-				for(int sNext=0; sNext<this.getNumStates(); sNext++) {
-					double p = 0.0;
-					
-					for(int s=0; s<this.getNumStates(); s++) {
-						p += getTransitionProbability(s, a, sNext) * b.getBelief(s);
-					}
-					
-					prob += getObservationProbability(a, sNext, o) * p;
+				for(int k=observationFunction.getRowStart(a, sNext); k<observationFunction.getRowEnd(a, sNext); k++) {
+					aoProbs[a][observationFunction.getColumn(a, k)] += observationFunction.getValue(a, k) * p;
 				}
-				
-				aoProbs[a][o] = prob;
 			}
 		}
 		
 		b.setActionObservationProbabilities(aoProbs);
 	}
 	
+	/**
+	 * Replace the transition and observation functions by single precision copies, which store each nonzero
+	 * probability as a float. Sums over the probabilities are still computed in double precision.
+	 * Cached successor beliefs are discarded, since they were computed using the double precision model.
+	 */
+	public void convertToSinglePrecision() {
+		setTransitionFunction(FloatSparseActionMatrix.copyOf(getSparseTransitionFunction()));
+		observationFunction = FloatSparseActionMatrix.copyOf(observationFunction);
+		
+		if(successorCache != null) {
+			successorCache.clear();
+		}
+	}
+	
+	/**
+	 * Set cache used by updateBelief to look up successor beliefs
+	 * @param successorCache cache, or null to disable caching
+	 */
+	public void setSuccessorCache(BeliefCache successorCache) {
+		this.successorCache = successorCache;
+	}
+	
+	public BeliefCache getSuccessorCache() {
+		return successorCache;
+	}
+	
+	/**
+	 * Get number of prepareBelief calls since the model was created or the counters were reset
+	 * @return number of calls
+	 */
+	public long getNumBeliefPreparations() {
+		return beliefPreparations.sum();
+	}
+	
+	/**
+	 * Get number of belief updates since the model was created or the counters were reset.
+	 * Each updateBelief call counts as one update, and updateBeliefs counts one update per belief in the batch.
+	 * @return number of updates
+	 */
+	public long getNumBeliefUpdates() {
+		return beliefUpdates.sum();
+	}
+	
+	/**
+	 * Reset the prepareBelief and updateBelief counters
+	 */
+	public void resetCounters() {
+		beliefPreparations.reset();
+		beliefUpdates.reset();
+	}
+	
 	public BeliefPoint updateBelief(BeliefPoint b, int a, int o) {
 		assert a<this.getNumActions() && o<nObservations;
-		double[] newBelief = new double[this.getNumStates()];
+		beliefUpdates.increment();
 		
-		// check if belief point has been prepared
-		if(!b.hasActionObservationProbabilities()) {
-			prepareBelief(b);
+		// successors may already be known from the transition map of the belief or from the cache
+		if(b.hasBeliefTransitionMap() && b.getBeliefTransitionMap()[a][o] != null) {
+			return b.getBeliefTransitionMap()[a][o];
+		}
+		
+		if(successorCache != null) {
+			BeliefPoint successor = successorCache.get(b, a, o);
+			
+			if(successor == null) {
+				successor = computeBelief(b, a, o);
+				successorCache.put(b, a, o, successor);
+			}
+			
+			return successor;
+		}
+		
+		return computeBelief(b, a, o);
+	}
+	
+	/**
+	 * Compute the successor of belief b after executing a and observing o. The successor has at most as many nonzero
+	 * entries as the predicted belief, so it is built directly from the entries of the predicted belief if these are
+	 * few enough for a sparse belief.
+	 * @param b belief b
+	 * @param a action a
+	 * @param o observation o
+	 * @return successor belief, whose history is the history of b extended with (a,o)
+	 */
+	private BeliefPoint computeBelief(BeliefPoint b, int a, int o) {
+		// the predicted belief is computed once and reused for the normalizing constant and the new belief
+		SparseAccumulator predicted = accumulators.get();
+		predictBelief(b, a, predicted);
+		
+		// compute normalizing constant, only action a is needed if the belief has not been prepared
+		double nc;
+		
+		if(b.hasActionObservationProbabilities()) {
+			nc = b.getActionObservationProbability(a, o);
+		}
+		else {
+			nc = 0.0;
+			
+			for(int i=0; i<predicted.getNumEntries(); i++) {
+				double p = predicted.getEntryValue(i);
+				if(p == 0.0) continue;
+				nc += getObservationProbability(a, predicted.getEntryIndex(i), o) * p;
+			}
 		}
 		
-		// compute normalizing constant
-		double nc = b.getActionObservationProbability(a, o);
 		assert nc > 0.0 : "o cannot be observed when executing a in belief b";
 		
 		// compute the new belief vector
-		for(int sNext=0; sNext<this.getNumStates(); sNext++) {
-			double beliefEntry = 0.0;
+		BeliefPoint successor;
+		int nEntries = predicted.getNumEntries();
+		
+		if(nEntries > sparseBeliefDensity * this.getNumStates()) {
+			double[] newBelief = predicted.toDense();
 			
-			for(int s=0; s<this.getNumStates(); s++) {
-				beliefEntry += getTransitionProbability(s, a, sNext) * b.getBelief(s);
+			for(int i=0; i<nEntries; i++) {
+				int sNext = predicted.getEntryIndex(i);
+				if(newBelief[sNext] == 0.0) continue;
+				newBelief[sNext] = newBelief[sNext] * (getObservationProbability(a, sNext, o) / nc);
+			}
+			
+			successor = createBelief(newBelief);
+		}
+		else {
+			int[] indices = new int[nEntries];
+			double[] values = new double[nEntries];
+			int nnz = 0;
+			
+			for(int i=0; i<nEntries; i++) {
+				int sNext = predicted.getEntryIndex(i);
+				double p = predicted.getEntryValue(i);
+				if(p == 0.0) continue;
+				
+				double value = p * (getObservationProbability(a, sNext, o) / nc);
+				
+				if(value != 0.0) {
+					indices[nnz] = sNext;
+					values[nnz] = value;
+					nnz++;
+				}
 			}
 			
-			newBelief[sNext] = beliefEntry * (getObservationProbability(a, sNext, o) / nc);
+			successor = new BeliefPoint(this.getNumStates(), Arrays.copyOf(indices, nnz), Arrays.copyOf(values, nnz));
+		}
+		
+		successor.setHistory(b.getHistory().append(a, o, nObservations));
+		return successor;
+	}
+	
+	/**
+	 * Compute the successor beliefs of all observations after executing action a, using a single predicted belief
+	 * @param b belief b
+	 * @param a action a
+	 * @return array containing the successor belief of each observation o, or null if P(o|b,a) = 0
+	 */
+	public BeliefPoint[] updateBelief(BeliefPoint b, int a) {
+		assert a<this.getNumActions();
+		beliefUpdates.increment();
+		int nStates = this.getNumStates();
+		SparseAccumulator predicted = accumulators.get();
+		double[] nc = new double[nObservations];
+		predictBelief(b, a, predicted);
+		int nEntries = predicted.getNumEntries();
+		
+		// compute normalizing constants P(o|b,a)
+		for(int i=0; i<nEntries; i++) {
+			int sNext = predicted.getEntryIndex(i);
+			double p = predicted.getEntryValue(i);
+			if(p == 0.0) continue;
+			
+			for(int k=observationFunction.getRowStart(a, sNext); k<observationFunction.getRowEnd(a, sNext); k++) {
+				nc[observationFunction.getColumn(a, k)] += observationFunction.getValue(a, k) * p;
+			}
+		}
+		
+		BeliefPoint[] successors = new BeliefPoint[nObservations];
+		
+		if(nEntries > sparseBeliefDensity * nStates) {
+			// distribute the predicted belief over the observations
+			double[][] newBeliefs = new double[nObservations][];
+			
+			for(int i=0; i<nEntries; i++) {
+				int sNext = predicted.getEntryIndex(i);
+				double p = predicted.getEntryValue(i);
+				if(p == 0.0) continue;
+				
+				for(int k=observationFunction.getRowStart(a, sNext); k<observationFunction.getRowEnd(a, sNext); k++) {
+					int o = observationFunction.getColumn(a, k);
+					if(nc[o] == 0.0) continue;
+					
+					if(newBeliefs[o] == null) {
+						newBeliefs[o] = new double[nStates];
+					}
+					
+					newBeliefs[o][sNext] = p * (observationFunction.getValue(a, k) / nc[o]);
+				}
+			}
+			
+			for(int o=0; o<nObservations; o++) {
+				if(newBeliefs[o] != null) {
+					successors[o] = createBelief(newBeliefs[o]);
+				}
+			}
+		}
+		else {
+			// the successors are sparse, their entries are counted before they are distributed over the observations
+			int[] nnz = new int[nObservations];
+			
+			for(int i=0; i<nEntries; i++) {
+				int sNext = predicted.getEntryIndex(i);
+				double p = predicted.getEntryValue(i);
+				if(p == 0.0) continue;
+				
+				for(int k=observationFunction.getRowStart(a, sNext); k<observationFunction.getRowEnd(a, sNext); k++) {
+					int o = observationFunction.getColumn(a, k);
+					
+					if(nc[o] != 0.0 && p * (observationFunction.getValue(a, k) / nc[o]) != 0.0) {
+						nnz[o]++;
+					}
+				}
+			}
+			
+			int[][] indices = new int[nObservations][];
+			double[][] values = new double[nObservations][];
+			
+			for(int o=0; o<nObservations; o++) {
+				if(nc[o] != 0.0) {
+					indices[o] = new int[nnz[o]];
+					values[o] = new double[nnz[o]];
+					nnz[o] = 0;
+				}
+			}
+			
+			for(int i=0; i<nEntries; i++) {
+				int sNext = predicted.getEntryIndex(i);
+				double p = predicted.getEntryValue(i);
+				if(p == 0.0) continue;
+				
+				for(int k=observationFunction.getRowStart(a, sNext); k<observationFunction.getRowEnd(a, sNext); k++) {
+					int o = observationFunction.getColumn(a, k);
+					if(nc[o] == 0.0) continue;
+					
+					double value = p * (observationFunction.getValue(a, k) / nc[o]);
+					
+					if(value != 0.0) {
+						indices[o][nnz[o]] = sNext;
+						values[o][nnz[o]] = value;
+						nnz[o]++;
+					}
+				}
+			}
+			
+			for(int o=0; o<nObservations; o++) {
+				if(indices[o] != null) {
+					successors[o] = new BeliefPoint(nStates, indices[o], values[o]);
+				}
+			}
+		}
+		
+		for(int o=0; o<nObservations; o++) {
+			if(successors[o] != null) {
+				successors[o].setHistory(b.getHistory().append(a, o, nObservations));
+			}
+		}
+		
+		return successors;
+	}
+	
+	/**
+	 * Update a batch of beliefs stored in a row-major n x nStates matrix for all observations. The predicted beliefs of a
+	 * block of beliefs are computed once as a product of the block and the sparse transition matrix of action a, which is
+	 * blocked over states such that a block of transition rows stays in cache while it is applied to the block of beliefs.
+	 * Each observation is then applied to the predicted beliefs. The results are identical to calling updateBelief(b, a)
+	 * on each belief.
+	 * @param beliefs row-major matrix containing n beliefs
+	 * @param n number of beliefs
+	 * @param a action a
+	 * @param newBeliefs row-major (n*nObservations) x nStates matrix that receives the successor of belief i and
+	 * observation o in row i*nObservations+o, rows with P(o|b,a) = 0 are zero
+	 * @param normalizers array that receives P(o|b,a) of belief i and observation o at position i*nObservations+o
+	 */
+	public void updateBeliefs(double[] beliefs, int n, int a, double[] newBeliefs, double[] normalizers) {
+		int nStates = this.getNumStates();
+		assert a<this.getNumActions();
+		beliefUpdates.add(n);
+		assert beliefs.length >= n * nStates && newBeliefs.length >= n * nObservations * nStates && normalizers.length >= n * nObservations;
+		SparseActionMatrix transitionFunction = this.getSparseTransitionFunction();
+		double[] predicted = new double[Math.min(n, BATCH_BELIEF_BLOCK) * nStates];
+		
+		for(int i0=0; i0<n; i0+=BATCH_BELIEF_BLOCK) {
+			int i1 = Math.min(n, i0 + BATCH_BELIEF_BLOCK);
+			Arrays.fill(predicted, 0.0);
+			
+			// predicted beliefs, states are visited in increasing order for each belief
+			for(int s0=0; s0<nStates; s0+=BATCH_STATE_BLOCK) {
+				int s1 = Math.min(nStates, s0 + BATCH_STATE_BLOCK);
+				
+				for(int i=i0; i<i1; i++) {
+					int offset = i * nStates;
+					int predictedOffset = (i - i0) * nStates;
+					
+					for(int s=s0; s<s1; s++) {
+						double bs = beliefs[offset + s];
+						if(bs == 0.0) continue;
+						
+						for(int k=transitionFunction.getRowStart(a, s); k<transitionFunction.getRowEnd(a, s); k++) {
+							predicted[predictedOffset + transitionFunction.getColumn(a, k)] += transitionFunction.getValue(a, k) * bs;
+						}
+					}
+				}
+			}
+			
+			for(int i=i0; i<i1; i++) {
+				int predictedOffset = (i - i0) * nStates;
+				int row = i * nObservations; // row of the successor of observation 0
+				Arrays.fill(normalizers, row, row + nObservations, 0.0);
+				Arrays.fill(newBeliefs, row * nStates, (row + nObservations) * nStates, 0.0);
+				
+				// compute normalizing constants P(o|b,a)
+				for(int sNext=0; sNext<nStates; sNext++) {
+					double p = predicted[predictedOffset + sNext];
+					if(p == 0.0) continue;
+					
+					for(int k=observationFunction.getRowStart(a, sNext); k<observationFunction.getRowEnd(a, sNext); k++) {
+						normalizers[row + observationFunction.getColumn(a, k)] += observationFunction.getValue(a, k) * p;
+					}
+				}
+				
+				// distribute the predicted belief over the observations
+				for(int sNext=0; sNext<nStates; sNext++) {
+					double p = predicted[predictedOffset + sNext];
+					if(p == 0.0) continue;
+					
+					for(int k=observationFunction.getRowStart(a, sNext); k<observationFunction.getRowEnd(a, sNext); k++) {
+						int o = observationFunction.getColumn(a, k);
+						double nc = normalizers[row + o];
+						if(nc == 0.0) continue;
+						
+						newBeliefs[(row + o) * nStates + sNext] = p * (observationFunction.getValue(a, k) / nc);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Compute the predicted belief sum_s P(sNext | s,a) b(s), visiting only nonzero beliefs and transitions. The entries
+	 * of the predicted belief are sorted by state, so sums over them are identical to sums over a dense vector.
+	 * @param b belief b
+	 * @param a action a
+	 * @param predicted accumulator that receives the predicted belief
+	 */
+	private void predictBelief(BeliefPoint b, int a, SparseAccumulator predicted) {
+		SparseActionMatrix transitionFunction = this.getSparseTransitionFunction();
+		predicted.clear();
+		
+		// a sparse belief only stores its nonzero entries
+		for(int i=0; i<b.getNumEntries(); i++) {
+			double bs = b.getEntryValue(i);
+			if(bs == 0.0) continue;
+			int s = b.getEntryState(i);
+			
+			for(int k=transitionFunction.getRowStart(a, s); k<transitionFunction.getRowEnd(a, s); k++) {
+				predicted.add(transitionFunction.getColumn(a, k), transitionFunction.getValue(a, k) * bs);
+			}
 		}
 		
-		return new BeliefPoint(newBelief);
+		predicted.sortIndices();
 	}
 }
@@ -0,0 +1,320 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Versioned binary format for POMDP models. All numbers are little-endian and all sections start at a multiple of 8 bytes.
+ * 
+ * header: magic "POMDPBIN", int version, int nStates, int nActions, int nObservations, double discountFactor,
+ *         int length of the UTF-8 name followed by the name
+ * rewards: nStates x nActions doubles, R(s,a) at position s*nActions + a
+ * initial belief: nStates doubles
+ * transitions: for each action a, int nnz, nStates+1 row offsets, nnz successor states and nnz probabilities
+ * observations: for each action a, int nnz, nStates+1 row offsets, nnz observations and nnz probabilities
+ * 
+ * When a file is read, the transition and observation functions are views of the mapped file and are not copied to the heap.
+ */
+public class POMDPBinaryFile {
+	private static final byte[] MAGIC = "POMDPBIN".getBytes(StandardCharsets.US_ASCII);
+	public static final int VERSION = 1;
+	
+	/**
+	 * Write a POMDP to a binary file
+	 * @param pomdp POMDP
+	 * @param filePath path of the binary file
+	 * @throws IOException
+	 */
+	public static void write(POMDP pomdp, String filePath) throws IOException {
+		int nStates = pomdp.getNumStates();
+		int nActions = pomdp.getNumActions();
+		byte[] name = pomdp.getName().getBytes(StandardCharsets.UTF_8);
+		FileOutputStream stream = new FileOutputStream(filePath);
+		
+		try {
+			Output out = new Output(stream.getChannel());
+			out.put(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(nStates);
+			out.putInt(nActions);
+			out.putInt(pomdp.getNumObservations());
+			out.putDouble(pomdp.getDiscountFactor());
+			out.putInt(name.length);
+			out.put(name);
+			out.pad();
+			
+			for(int s=0; s<nStates; s++) {
+				for(int a=0; a<nActions; a++) {
+					out.putDouble(pomdp.getReward(s, a));
+				}
+			}
+			
+			for(int s=0; s<nStates; s++) {
+				out.putDouble(pomdp.getInitialBelief().getBelief(s));
+			}
+			
+			writeMatrix(out, pomdp.getSparseTransitionFunction());
+			writeMatrix(out, pomdp.getSparseObservationFunction());
+			out.flush();
+			stream.getChannel().force(false);
+		}
+		finally {
+			stream.close();
+		}
+	}
+	
+	/**
+	 * Open a binary file created by write. Each section is mapped separately, so files may be larger than 2 GB as long
+	 * as the rewards and each array of a single action fit in a mapped buffer. The file is mapped read-only, and
+	 * MDP.addTransitionNoise copies the transition function to the heap before modifying it.
+	 * @param filePath path of the binary file
+	 * @return POMDP
+	 * @throws IOException if the file is not a binary POMDP file or a section is too large to be mapped
+	 */
+	public static POMDP read(String filePath) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filePath, "r");
+		
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = readBytes(channel, 0, MAGIC.length + 4 * 4 + 8 + 4);
+			
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			
+			for(int i=0; i<MAGIC.length; i++) {
+				if(magic[i] != MAGIC[i]) {
+					throw new IOException(filePath+" is not a binary POMDP file");
+				}
+			}
+			
+			int version = header.getInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported binary POMDP version "+version+" in "+filePath);
+			}
+			
+			int nStates = header.getInt();
+			int nActions = header.getInt();
+			int nObservations = header.getInt();
+			double discountFactor = header.getDouble();
+			byte[] name = new byte[header.getInt()];
+			readBytes(channel, header.limit(), name.length).get(name);
+			long position = align(header.limit() + name.length);
+			
+			DoubleBuffer rewards = map(channel, position, 8L * nStates * nActions).asDoubleBuffer();
+			position += 8L * nStates * nActions;
+			double[][] rewardFunction = new double[nStates][nActions];
+			for(int s=0; s<nStates; s++) {
+				rewards.get(rewardFunction[s]);
+			}
+			
+			double[] beliefEntries = new double[nStates];
+			map(channel, position, 8L * nStates).asDoubleBuffer().get(beliefEntries);
+			position += 8L * nStates;
+			
+			long[] matrixPosition = new long[] {position};
+			SparseActionMatrix transitionFunction = readMatrix(channel, matrixPosition, nActions, nStates, nStates);
+			SparseActionMatrix observationFunction = readMatrix(channel, matrixPosition, nActions, nStates, nObservations);
+			
+			return new POMDP(new String(name, StandardCharsets.UTF_8), nStates, nActions, nObservations, discountFactor, rewardFunction, transitionFunction, observationFunction, new BeliefPoint(beliefEntries));
+		}
+		finally {
+			// mapped buffers remain valid after the channel is closed
+			file.close();
+		}
+	}
+	
+	/**
+	 * Read a .POMDP file, using a binary copy of the model if it is at least as recent as the text file.
+	 * Otherwise the text file is parsed and the binary copy is (re)written.
+	 * @param filePath path of the .POMDP file
+	 * @param binaryPath path of the binary copy
+	 * @return POMDP
+	 * @throws IOException
+	 */
+	public static POMDP readCached(String filePath, String binaryPath) throws IOException {
+		File textFile = new File(filePath);
+		File binaryFile = new File(binaryPath);
+		
+		if(binaryFile.exists() && binaryFile.lastModified() >= textFile.lastModified()) {
+			return read(binaryPath);
+		}
+		
+		POMDP pomdp = ParsePOMDP.readPOMDP(filePath);
+		write(pomdp, binaryPath);
+		return pomdp;
+	}
+	
+	private static void writeMatrix(Output out, SparseActionMatrix m) throws IOException {
+		// the file stores the rows of each action separately, with offsets relative to the first row of the action
+		for(int a=0; a<m.getNumActions(); a++) {
+			int nnz = getNumNonZeros(m, a);
+			out.putInt(nnz);
+			int offset = 0;
+			
+			for(int row=0; row<m.getNumRows(); row++) {
+				out.putInt(offset);
+				offset += m.getRowEnd(a, row) - m.getRowStart(a, row);
+			}
+			out.putInt(nnz);
+			
+			for(int row=0; row<m.getNumRows(); row++) {
+				for(int k=m.getRowStart(a, row); k<m.getRowEnd(a, row); k++) {
+					out.putInt(m.getColumn(a, k));
+				}
+			}
+			out.pad();
+			
+			for(int row=0; row<m.getNumRows(); row++) {
+				for(int k=m.getRowStart(a, row); k<m.getRowEnd(a, row); k++) {
+					out.putDouble(m.getValue(a, k));
+				}
+			}
+		}
+	}
+	
+	private static int getNumNonZeros(SparseActionMatrix m, int a) {
+		int nnz = 0;
+		
+		for(int row=0; row<m.getNumRows(); row++) {
+			nnz += m.getRowEnd(a, row) - m.getRowStart(a, row);
+		}
+		
+		return nnz;
+	}
+	
+	/**
+	 * Map the sparse matrices of all actions
+	 * @param channel file
+	 * @param position position of the first action, which is advanced past the matrices
+	 * @param nActions number of actions
+	 * @param nRows number of rows
+	 * @param nColumns number of columns
+	 * @return matrices backed by the mapped file
+	 * @throws IOException
+	 */
+	private static SparseActionMatrix readMatrix(FileChannel channel, long[] position, int nActions, int nRows, int nColumns) throws IOException {
+		IntBuffer[] rowStart = new IntBuffer[nActions];
+		IntBuffer[] columns = new IntBuffer[nActions];
+		DoubleBuffer[] values = new DoubleBuffer[nActions];
+		long p = position[0];
+		
+		for(int a=0; a<nActions; a++) {
+			int nnz = readBytes(channel, p, 4).getInt();
+			p += 4;
+			rowStart[a] = map(channel, p, 4L * (nRows + 1)).asIntBuffer();
+			p += 4L * (nRows + 1);
+			columns[a] = map(channel, p, 4L * nnz).asIntBuffer();
+			p = align(p + 4L * nnz);
+			values[a] = map(channel, p, 8L * nnz).asDoubleBuffer();
+			p += 8L * nnz;
+		}
+		
+		position[0] = p;
+		return new MappedSparseActionMatrix(nActions, nRows, nColumns, rowStart, columns, values);
+	}
+	
+	/**
+	 * Map a section of a file as a little-endian buffer
+	 * @param channel file
+	 * @param position position of the section
+	 * @param length length of the section in bytes
+	 * @return read-only buffer
+	 * @throws IOException if the section is outside the file or larger than a mapped buffer can be
+	 */
+	private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+		if(length > Integer.MAX_VALUE) {
+			throw new IOException("Section of "+length+" bytes exceeds the maximum size of a mapped buffer");
+		}
+		
+		if(position + length > channel.size()) {
+			throw new IOException("Binary POMDP file is truncated");
+		}
+		
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Read a small section of a file into a little-endian heap buffer
+	 * @param channel file
+	 * @param position position of the section
+	 * @param length length of the section in bytes
+	 * @return buffer
+	 * @throws IOException if the file ends before the section
+	 */
+	private static ByteBuffer readBytes(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Binary POMDP file is truncated");
+			}
+		}
+		
+		buffer.flip();
+		return buffer;
+	}
+	
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+	
+	/**
+	 * Buffered little-endian output that keeps track of its position as a long, so files may exceed 2 GB
+	 */
+	private static class Output {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+		private long position = 0;
+		
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+		
+		private void ensure(int length) throws IOException {
+			if(buffer.remaining() < length) flush();
+		}
+		
+		void put(byte[] bytes) throws IOException {
+			for(byte b : bytes) {
+				ensure(1);
+				buffer.put(b);
+			}
+			
+			position += bytes.length;
+		}
+		
+		void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+			position += 4;
+		}
+		
+		void putDouble(double value) throws IOException {
+			ensure(8);
+			buffer.putDouble(value);
+			position += 8;
+		}
+		
+		void pad() throws IOException {
+			while(position % 8 != 0) {
+				put(new byte[1]);
+			}
+		}
+		
+		void flush() throws IOException {
+			buffer.flip();
+			
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,902 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Single-pass parser for Cassandra's .POMDP file format. The file is memory-mapped and tokenized directly,
+ * and T, O and R entries are stored sparsely while parsing, such that no dense S x A x S arrays are created.
+ */
+public class POMDPFileParser {
+	private ByteBuffer buffer;
+	private int position = 0;
+	private int limit;
+	
+	private String tokenString; // current token if it is not a number
+	private double tokenNumber; // current token if it is a number
+	private boolean tokenIsInteger; // true if the current number has no fraction or exponent
+	private int tokenType;
+	private int tokenStart;
+	private int tokenEnd;
+	
+	private static final int TOKEN_EOF = 0;
+	private static final int TOKEN_COLON = 1;
+	private static final int TOKEN_NUMBER = 2;
+	private static final int TOKEN_WORD = 3;
+	
+	private static final int WILDCARD = -1;
+	
+	private double discountFactor = 1.0;
+	private boolean isCost = false;
+	private int nStates = -1;
+	private int nActions = -1;
+	private int nObservations = -1;
+	private HashMap<String,Integer> stateNames = new HashMap<String,Integer>();
+	private HashMap<String,Integer> actionNames = new HashMap<String,Integer>();
+	private HashMap<String,Integer> observationNames = new HashMap<String,Integer>();
+	private List<String> actionLabels = new ArrayList<String>();
+	private double[] initialBelief = null;
+	
+	// T(s,a,sNext) is stored with key (a*nStates + s)*nStates + sNext and O(a,sNext,o) with key (a*nStates + sNext)*nObservations + o
+	private LongDoubleMap transitions = new LongDoubleMap();
+	private LongDoubleMap observations = new LongDoubleMap();
+	
+	// reward entries R(a,s,sNext,o) in file order, later entries override earlier ones
+	private int nRewardEntries = 0;
+	private int[] rewardEntries = new int[64]; // entry i occupies positions 4*i ... 4*i+3, containing a, s, sNext and o
+	private double[] rewardValues = new double[16];
+	
+	public POMDPFileParser(String filePath) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filePath, "r");
+		
+		try {
+			FileChannel channel = file.getChannel();
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			this.limit = buffer.limit();
+		}
+		finally {
+			file.close();
+		}
+	}
+	
+	/**
+	 * Parse the file and create a POMDP object
+	 * @param name name of the POMDP
+	 * @return POMDP
+	 */
+	public POMDP parse(String name) {
+		nextToken();
+		
+		while(tokenType != TOKEN_EOF) {
+			String keyword = expectWord();
+			
+			if(keyword.equals("discount")) {
+				expectColon();
+				discountFactor = expectNumber();
+			}
+			else if(keyword.equals("values")) {
+				expectColon();
+				isCost = expectWord().equals("cost");
+			}
+			else if(keyword.equals("states")) {
+				expectColon();
+				nStates = parseNames(stateNames, null);
+			}
+			else if(keyword.equals("actions")) {
+				expectColon();
+				nActions = parseNames(actionNames, actionLabels);
+			}
+			else if(keyword.equals("observations")) {
+				expectColon();
+				nObservations = parseNames(observationNames, null);
+			}
+			else if(keyword.equals("start")) {
+				parseStart();
+			}
+			else if(keyword.equals("T")) {
+				expectColon();
+				parseTransition();
+			}
+			else if(keyword.equals("O")) {
+				expectColon();
+				parseObservation();
+			}
+			else if(keyword.equals("R")) {
+				expectColon();
+				parseReward();
+			}
+			else {
+				throw error("unexpected token "+keyword);
+			}
+		}
+		
+		if(initialBelief == null) {
+			initialBelief = new double[nStates];
+			Arrays.fill(initialBelief, 1.0 / nStates);
+		}
+		
+		SparseActionMatrix transitionFunction = buildMatrix(transitions, nStates, nStates);
+		SparseActionMatrix observationFunction = buildMatrix(observations, nStates, nObservations);
+		double[][] rewardFunction = computeRewardFunction(transitionFunction, observationFunction);
+		
+		return new POMDP(name, nStates, nActions, nObservations, discountFactor, rewardFunction, transitionFunction, observationFunction, new BeliefPoint(initialBelief));
+	}
+	
+	/**
+	 * Get action labels in the order of the action indices
+	 * @return action labels
+	 */
+	public List<String> getActionLabels() {
+		return actionLabels;
+	}
+	
+	/**
+	 * Parse either a number of elements or a list of element names
+	 * @param names map that receives the index of each name
+	 * @param labels list that receives the label of each element, may be null
+	 * @return number of elements
+	 */
+	private int parseNames(HashMap<String,Integer> names, List<String> labels) {
+		if(tokenType == TOKEN_NUMBER) {
+			int n = (int) tokenNumber;
+			nextToken();
+			
+			if(labels != null) {
+				for(int i=0; i<n; i++) {
+					labels.add(Integer.toString(i));
+				}
+			}
+			
+			return n;
+		}
+		
+		int n = 0;
+		
+		while(tokenType == TOKEN_WORD && !isKeyword(tokenString)) {
+			names.put(tokenString, n);
+			
+			if(labels != null) {
+				labels.add(tokenString);
+			}
+			
+			n++;
+			nextToken();
+		}
+		
+		return n;
+	}
+	
+	private boolean isKeyword(String word) {
+		return word.equals("discount") || word.equals("values") || word.equals("states") || word.equals("actions") ||
+				word.equals("observations") || word.equals("start") || word.equals("T") || word.equals("O") || word.equals("R");
+	}
+	
+	private void parseStart() {
+		checkDimensions();
+		initialBelief = new double[nStates];
+		
+		if(tokenType == TOKEN_WORD && (tokenString.equals("include") || tokenString.equals("exclude"))) {
+			boolean include = tokenString.equals("include");
+			nextToken();
+			expectColon();
+			boolean[] listed = new boolean[nStates];
+			int nListed = 0;
+			
+			while(tokenType == TOKEN_NUMBER || (tokenType == TOKEN_WORD && stateNames.containsKey(tokenString))) {
+				int s = expectIndex(stateNames, nStates);
+				if(!listed[s]) nListed++;
+				listed[s] = true;
+			}
+			
+			int nSupport = include ? nListed : nStates - nListed;
+			
+			for(int s=0; s<nStates; s++) {
+				initialBelief[s] = listed[s] == include ? 1.0 / nSupport : 0.0;
+			}
+			
+			return;
+		}
+		
+		expectColon();
+		
+		if(tokenType == TOKEN_WORD && tokenString.equals("uniform")) {
+			nextToken();
+			Arrays.fill(initialBelief, 1.0 / nStates);
+		}
+		else if(tokenType == TOKEN_WORD) {
+			initialBelief[expectIndex(stateNames, nStates)] = 1.0;
+		}
+		else {
+			// either a single state number or a probability for each state
+			boolean isInteger = tokenIsInteger;
+			int firstStart = tokenStart;
+			String firstText = tokenText();
+			double first = expectNumber();
+			
+			if(tokenType != TOKEN_NUMBER && isInteger) {
+				// the state number has been consumed, so the error refers to its position
+				if(first < 0 || first >= nStates) {
+					throw error("index out of range "+firstText, firstStart);
+				}
+				
+				initialBelief[(int) first] = 1.0;
+			}
+			else {
+				initialBelief[0] = first;
+				
+				for(int s=1; s<nStates; s++) {
+					initialBelief[s] = expectNumber();
+				}
+			}
+		}
+	}
+	
+	private void parseTransition() {
+		checkDimensions();
+		int a = expectIndexOrWildcard(actionNames, nActions);
+		int[] actions = range(a, nActions);
+		
+		if(tokenType != TOKEN_COLON) {
+			// matrix, uniform or identity for all s
+			if(tokenType == TOKEN_WORD && tokenString.equals("identity")) {
+				nextToken();
+				long actionSize = (long) nStates * nStates;
+				
+				// off-diagonal zeros only need to be stored for the entries of earlier statements
+				for(long key : transitions.getKeys()) {
+					if(a == WILDCARD || key / actionSize == a) {
+						transitions.put(key, 0.0);
+					}
+				}
+				
+				for(int ai : actions) {
+					for(int s=0; s<nStates; s++) {
+						transitions.put(transitionKey(ai, s, s), 1.0);
+					}
+				}
+			}
+			else if(tokenType == TOKEN_WORD && tokenString.equals("uniform")) {
+				nextToken();
+				
+				for(int ai : actions) {
+					for(int s=0; s<nStates; s++) {
+						for(int sNext=0; sNext<nStates; sNext++) {
+							transitions.put(transitionKey(ai, s, sNext), 1.0 / nStates);
+						}
+					}
+				}
+			}
+			else {
+				for(int s=0; s<nStates; s++) {
+					for(int sNext=0; sNext<nStates; sNext++) {
+						double p = expectNumber();
+						
+						for(int ai : actions) {
+							transitions.put(transitionKey(ai, s, sNext), p);
+						}
+					}
+				}
+			}
+			
+			return;
+		}
+		
+		expectColon();
+		int s = expectIndexOrWildcard(stateNames, nStates);
+		int[] states = range(s, nStates);
+		
+		if(tokenType != TOKEN_COLON) {
+			// row for sNext
+			double[] row = parseRow(nStates);
+			
+			for(int ai : actions) {
+				for(int si : states) {
+					for(int sNext=0; sNext<nStates; sNext++) {
+						transitions.put(transitionKey(ai, si, sNext), row[sNext]);
+					}
+				}
+			}
+			
+			return;
+		}
+		
+		expectColon();
+		int sNext = expectIndexOrWildcard(stateNames, nStates);
+		double p = expectNumber();
+		int[] nextStates = range(sNext, nStates);
+		
+		for(int ai : actions) {
+			for(int si : states) {
+				for(int sNexti : nextStates) {
+					transitions.put(transitionKey(ai, si, sNexti), p);
+				}
+			}
+		}
+	}
+	
+	private void parseObservation() {
+		checkDimensions();
+		int a = expectIndexOrWildcard(actionNames, nActions);
+		int[] actions = range(a, nActions);
+		
+		if(tokenType != TOKEN_COLON) {
+			// matrix or uniform for all sNext
+			if(tokenType == TOKEN_WORD && tokenString.equals("uniform")) {
+				nextToken();
+				
+				for(int ai : actions) {
+					for(int sNext=0; sNext<nStates; sNext++) {
+						for(int o=0; o<nObservations; o++) {
+							observations.put(observationKey(ai, sNext, o), 1.0 / nObservations);
+						}
+					}
+				}
+			}
+			else {
+				for(int sNext=0; sNext<nStates; sNext++) {
+					for(int o=0; o<nObservations; o++) {
+						double p = expectNumber();
+						
+						for(int ai : actions) {
+							observations.put(observationKey(ai, sNext, o), p);
+						}
+					}
+				}
+			}
+			
+			return;
+		}
+		
+		expectColon();
+		int sNext = expectIndexOrWildcard(stateNames, nStates);
+		int[] nextStates = range(sNext, nStates);
+		
+		if(tokenType != TOKEN_COLON) {
+			// row for o
+			double[] row = parseRow(nObservations);
+			
+			for(int ai : actions) {
+				for(int sNexti : nextStates) {
+					for(int o=0; o<nObservations; o++) {
+						observations.put(observationKey(ai, sNexti, o), row[o]);
+					}
+				}
+			}
+			
+			return;
+		}
+		
+		expectColon();
+		int o = expectIndexOrWildcard(observationNames, nObservations);
+		double p = expectNumber();
+		int[] obs = range(o, nObservations);
+		
+		for(int ai : actions) {
+			for(int sNexti : nextStates) {
+				for(int oi : obs) {
+					observations.put(observationKey(ai, sNexti, oi), p);
+				}
+			}
+		}
+	}
+	
+	private void parseReward() {
+		checkDimensions();
+		int a = expectIndexOrWildcard(actionNames, nActions);
+		expectColon();
+		int s = expectIndexOrWildcard(stateNames, nStates);
+		
+		if(tokenType != TOKEN_COLON) {
+			// matrix over sNext and o
+			for(int sNext=0; sNext<nStates; sNext++) {
+				for(int o=0; o<nObservations; o++) {
+					addReward(a, s, sNext, o, expectNumber());
+				}
+			}
+			
+			return;
+		}
+		
+		expectColon();
+		int sNext = expectIndexOrWildcard(stateNames, nStates);
+		
+		if(tokenType != TOKEN_COLON) {
+			// row for o
+			for(int o=0; o<nObservations; o++) {
+				addReward(a, s, sNext, o, expectNumber());
+			}
+			
+			return;
+		}
+		
+		expectColon();
+		int o = expectIndexOrWildcard(observationNames, nObservations);
+		addReward(a, s, sNext, o, expectNumber());
+	}
+	
+	/**
+	 * Parse a row of probabilities, or the keyword uniform
+	 * @param n length of the row
+	 * @return row
+	 */
+	private double[] parseRow(int n) {
+		double[] row = new double[n];
+		
+		if(tokenType == TOKEN_WORD && tokenString.equals("uniform")) {
+			nextToken();
+			Arrays.fill(row, 1.0 / n);
+			return row;
+		}
+		
+		for(int i=0; i<n; i++) {
+			row[i] = expectNumber();
+		}
+		
+		return row;
+	}
+	
+	private void addReward(int a, int s, int sNext, int o, double value) {
+		if(nRewardEntries == rewardValues.length) {
+			rewardEntries = Arrays.copyOf(rewardEntries, 8 * nRewardEntries);
+			rewardValues = Arrays.copyOf(rewardValues, 2 * nRewardEntries);
+		}
+		
+		rewardEntries[4*nRewardEntries] = a;
+		rewardEntries[4*nRewardEntries+1] = s;
+		rewardEntries[4*nRewardEntries+2] = sNext;
+		rewardEntries[4*nRewardEntries+3] = o;
+		rewardValues[nRewardEntries] = isCost ? -value : value;
+		nRewardEntries++;
+	}
+	
+	/**
+	 * Compute R(s,a) = sum_sNext P(sNext | s,a) sum_o P(o | a,sNext) R(a,s,sNext,o), where R(a,s,sNext,o) is
+	 * given by the last matching reward entry in the file. If that entry has a wildcard observation for sNext, its
+	 * reward is used for sNext without the sum over o, which would only add rounding errors.
+	 * @param transitionFunction transition function
+	 * @param observationFunction observation function
+	 * @return reward function
+	 */
+	private double[][] computeRewardFunction(SparseActionMatrix transitionFunction, SparseActionMatrix observationFunction) {
+		double[][] rewardFunction = new double[nStates][nActions];
+		
+		// group the entries by the (a,s) pairs they match, keeping the file order within each group
+		int[] groupStart = new int[nActions * nStates + 1];
+		
+		for(int i=0; i<nRewardEntries; i++) {
+			for(int a : range(rewardEntries[4*i], nActions)) {
+				for(int s : range(rewardEntries[4*i+1], nStates)) {
+					groupStart[a * nStates + s + 1]++;
+				}
+			}
+		}
+		
+		for(int g=0; g<nActions * nStates; g++) {
+			groupStart[g+1] += groupStart[g];
+		}
+		
+		int[] group = new int[groupStart[nActions * nStates]];
+		int[] fill = Arrays.copyOf(groupStart, nActions * nStates);
+		
+		for(int i=0; i<nRewardEntries; i++) {
+			for(int a : range(rewardEntries[4*i], nActions)) {
+				for(int s : range(rewardEntries[4*i+1], nStates)) {
+					group[fill[a * nStates + s]++] = i;
+				}
+			}
+		}
+		
+		for(int a=0; a<nActions; a++) {
+			for(int s=0; s<nStates; s++) {
+				int first = groupStart[a * nStates + s];
+				int last = groupStart[a * nStates + s + 1] - 1;
+				if(last < first) continue;
+				
+				// an entry with wildcards for sNext and o overrides all earlier entries
+				int lastEntry = group[last];
+				if(rewardEntries[4*lastEntry+2] == WILDCARD && rewardEntries[4*lastEntry+3] == WILDCARD) {
+					rewardFunction[s][a] = rewardValues[lastEntry];
+					continue;
+				}
+				
+				double reward = 0.0;
+				
+				for(int k=transitionFunction.getRowStart(a, s); k<transitionFunction.getRowEnd(a, s); k++) {
+					int sNext = transitionFunction.getColumn(a, k);
+					
+					// find the last entry that matches sNext, later entries cannot match any o
+					int match = last;
+					
+					while(match >= first && rewardEntries[4*group[match]+2] != WILDCARD && rewardEntries[4*group[match]+2] != sNext) {
+						match--;
+					}
+					
+					if(match < first) continue;
+					double sum;
+					
+					if(rewardEntries[4*group[match]+3] == WILDCARD) {
+						// the entry gives the same reward for each o, so it is used as written instead of a weighted sum over o
+						sum = rewardValues[group[match]];
+					}
+					else {
+						sum = 0.0;
+						
+						for(int l=observationFunction.getRowStart(a, sNext); l<observationFunction.getRowEnd(a, sNext); l++) {
+							int o = observationFunction.getColumn(a, l);
+							
+							for(int j=match; j>=first; j--) {
+								int i = group[j];
+								int entrySNext = rewardEntries[4*i+2];
+								int entryO = rewardEntries[4*i+3];
+								
+								if((entrySNext == WILDCARD || entrySNext == sNext) && (entryO == WILDCARD || entryO == o)) {
+									sum += observationFunction.getValue(a, l) * rewardValues[i];
+									break;
+								}
+							}
+						}
+					}
+					
+					reward += transitionFunction.getValue(a, k) * sum;
+				}
+				
+				rewardFunction[s][a] = reward;
+			}
+		}
+		
+		return rewardFunction;
+	}
+	
+	/**
+	 * Build sparse matrices from entries with key (a*nRows + row)*nColumns + column
+	 */
+	private SparseActionMatrix buildMatrix(LongDoubleMap entries, int nRows, int nColumns) {
+		long[] keys = entries.getKeys();
+		Arrays.sort(keys);
+		SparseActionMatrix.Builder builder = new SparseActionMatrix.Builder(nActions, nRows, nColumns);
+		
+		for(long key : keys) {
+			int column = (int) (key % nColumns);
+			long rest = key / nColumns;
+			int row = (int) (rest % nRows);
+			int a = (int) (rest / nRows);
+			builder.add(a, row, column, entries.get(key));
+		}
+		
+		return builder.build();
+	}
+	
+	private long transitionKey(int a, int s, int sNext) {
+		return ((long) a * nStates + s) * nStates + sNext;
+	}
+	
+	private long observationKey(int a, int sNext, int o) {
+		return ((long) a * nStates + sNext) * nObservations + o;
+	}
+	
+	/**
+	 * Get the indices matched by an index or a wildcard
+	 */
+	private static int[] range(int index, int n) {
+		if(index != WILDCARD) {
+			return new int[] {index};
+		}
+		
+		int[] indices = new int[n];
+		
+		for(int i=0; i<n; i++) {
+			indices[i] = i;
+		}
+		
+		return indices;
+	}
+	
+	private void checkDimensions() {
+		if(nStates < 0 || nActions < 0 || nObservations < 0) {
+			throw error("states, actions and observations must be declared before the model entries");
+		}
+	}
+	
+	private int expectIndexOrWildcard(HashMap<String,Integer> names, int n) {
+		if(tokenType == TOKEN_WORD && tokenString.equals("*")) {
+			nextToken();
+			return WILDCARD;
+		}
+		
+		return expectIndex(names, n);
+	}
+	
+	private int expectIndex(HashMap<String,Integer> names, int n) {
+		int index;
+		
+		if(tokenType == TOKEN_NUMBER) {
+			index = (int) tokenNumber;
+		}
+		else if(tokenType == TOKEN_WORD && names.containsKey(tokenString)) {
+			index = names.get(tokenString);
+		}
+		else {
+			throw error("unknown name "+tokenText());
+		}
+		
+		if(index < 0 || index >= n) {
+			throw error("index out of range "+tokenText());
+		}
+		
+		nextToken();
+		return index;
+	}
+	
+	private String expectWord() {
+		if(tokenType != TOKEN_WORD) {
+			throw error("expected a keyword or name but found "+tokenText());
+		}
+		
+		String word = tokenString;
+		nextToken();
+		return word;
+	}
+	
+	private double expectNumber() {
+		if(tokenType != TOKEN_NUMBER) {
+			throw error("expected a number but found "+tokenText());
+		}
+		
+		double number = tokenNumber;
+		nextToken();
+		return number;
+	}
+	
+	private void expectColon() {
+		if(tokenType != TOKEN_COLON) {
+			throw error("expected : but found "+tokenText());
+		}
+		
+		nextToken();
+	}
+	
+	private RuntimeException error(String message) {
+		return error(message, tokenStart);
+	}
+	
+	/**
+	 * Create a parse error that refers to the line of a position in the file
+	 * @param message message
+	 * @param position position in the file
+	 * @return exception
+	 */
+	private RuntimeException error(String message, int position) {
+		int line = 1;
+		
+		for(int i=0; i<position && i<limit; i++) {
+			if(buffer.get(i) == '\n') line++;
+		}
+		
+		return new IllegalArgumentException("Parse error on line "+line+": "+message);
+	}
+	
+	private String tokenText() {
+		return tokenType == TOKEN_EOF ? "end of file" : new String(bytes(tokenStart, tokenEnd));
+	}
+	
+	private byte[] bytes(int start, int end) {
+		byte[] b = new byte[end - start];
+		
+		for(int i=start; i<end; i++) {
+			b[i - start] = buffer.get(i);
+		}
+		
+		return b;
+	}
+	
+	/**
+	 * Read the next token, skipping whitespace and comments
+	 */
+	private void nextToken() {
+		while(position < limit) {
+			byte c = buffer.get(position);
+			
+			if(c == '#') {
+				while(position < limit && buffer.get(position) != '\n') position++;
+			}
+			else if(c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+				position++;
+			}
+			else {
+				break;
+			}
+		}
+		
+		tokenStart = position;
+		
+		if(position >= limit) {
+			tokenType = TOKEN_EOF;
+			tokenEnd = position;
+			return;
+		}
+		
+		if(buffer.get(position) == ':') {
+			position++;
+			tokenType = TOKEN_COLON;
+			tokenEnd = position;
+			return;
+		}
+		
+		while(position < limit) {
+			byte c = buffer.get(position);
+			if(c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == ':' || c == '#') break;
+			position++;
+		}
+		
+		tokenEnd = position;
+		
+		if(parseNumber(tokenStart, tokenEnd)) {
+			tokenType = TOKEN_NUMBER;
+		}
+		else {
+			tokenType = TOKEN_WORD;
+			tokenString = new String(bytes(tokenStart, tokenEnd));
+		}
+	}
+	
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	
+	/**
+	 * Parse a decimal number with an optional sign, fraction and exponent into tokenNumber. Numbers with at most 15
+	 * significant digits and no exponent are converted with a single exact division, which gives the same result as
+	 * Double.parseDouble. Other forms accepted by Double.parseDouble, such as 1e5f, 0x1p3 or NaN, are not numbers.
+	 * @return true if the token is a number
+	 */
+	private boolean parseNumber(int start, int end) {
+		int i = start;
+		boolean negative = false;
+		
+		if(i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+		
+		long mantissa = 0;
+		int nDigits = 0;
+		int nFractionDigits = 0;
+		boolean fraction = false;
+		boolean hasDigits = false;
+		boolean simple = true;
+		
+		for(; i < end; i++) {
+			byte c = buffer.get(i);
+			
+			if(c >= '0' && c <= '9') {
+				hasDigits = true;
+				
+				if(nDigits < 18) {
+					mantissa = mantissa * 10 + (c - '0');
+					if(mantissa != 0) nDigits++;
+					if(fraction) nFractionDigits++;
+				}
+				else {
+					simple = false;
+				}
+			}
+			else if(c == '.' && !fraction) {
+				fraction = true;
+			}
+			else if(c == 'e' || c == 'E') {
+				simple = false;
+				break;
+			}
+			else {
+				return false;
+			}
+		}
+		
+		if(!hasDigits) return false;
+		
+		// an exponent consists of an optional sign and at least one digit
+		if(i < end) {
+			i++;
+			
+			if(i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+				i++;
+			}
+			
+			int exponentStart = i;
+			
+			while(i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9') {
+				i++;
+			}
+			
+			if(i == exponentStart || i < end) return false;
+		}
+		
+		tokenIsInteger = simple && !fraction;
+		
+		if(simple && nDigits <= 15 && nFractionDigits <= 22) {
+			double value = (double) mantissa / POWERS_OF_TEN[nFractionDigits];
+			tokenNumber = negative ? -value : value;
+			return true;
+		}
+		
+		// the token is a valid decimal number, only its conversion is left to Double.parseDouble
+		tokenNumber = Double.parseDouble(new String(bytes(start, end)));
+		return true;
+	}
+	
+	/**
+	 * Open-addressing hash map from non-negative long keys to double values
+	 */
+	private static class LongDoubleMap {
+		private long[] keys = new long[1024];
+		private double[] values = new double[1024];
+		private int size = 0;
+		
+		LongDoubleMap() {
+			Arrays.fill(keys, -1L);
+		}
+		
+		void put(long key, double value) {
+			if(2 * (size + 1) > keys.length) {
+				grow();
+			}
+			
+			int i = slot(key);
+			
+			if(keys[i] < 0) {
+				// zeros only need to be stored if they override an earlier entry
+				if(value == 0.0) return;
+				
+				keys[i] = key;
+				size++;
+			}
+			
+			values[i] = value;
+		}
+		
+		double get(long key) {
+			int i = slot(key);
+			return keys[i] < 0 ? 0.0 : values[i];
+		}
+		
+		long[] getKeys() {
+			long[] result = new long[size];
+			int n = 0;
+			
+			for(int i=0; i<keys.length; i++) {
+				if(keys[i] >= 0) result[n++] = keys[i];
+			}
+			
+			return result;
+		}
+		
+		private int slot(long key) {
+			int mask = keys.length - 1;
+			long h = key * 0x9E3779B97F4A7C15L;
+			int i = (int) (h ^ (h >>> 32)) & mask;
+			
+			while(keys[i] >= 0 && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			
+			return i;
+		}
+		
+		private void grow() {
+			long[] oldKeys = keys;
+			double[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new double[oldKeys.length * 2];
+			Arrays.fill(keys, -1L);
+			size = 0;
+			
+			for(int i=0; i<oldKeys.length; i++) {
+				if(oldKeys[i] >= 0) {
+					put(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+	}
+}
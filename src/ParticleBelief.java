@@ -0,0 +1,149 @@
+import java.util.SplittableRandom;
+
+/**
+ * Belief represented by a set of sampled states, which is updated with a particle filter instead of the exact
+ * Bayesian update of POMDP.updateBelief. An update costs O(particles) instead of O(nStates^2).
+ */
+public class ParticleBelief {
+	private int[] particles;
+	
+	public ParticleBelief(int[] particles) {
+		assert particles.length > 0;
+		this.particles = particles;
+	}
+	
+	/**
+	 * Draw particles from a belief
+	 * @param b belief
+	 * @param nParticles number of particles
+	 * @param rnd random generator
+	 * @return particle belief
+	 */
+	public static ParticleBelief fromBelief(BeliefPoint b, int nParticles, SplittableRandom rnd) {
+		AliasTable table = AliasTable.fromDistribution(b.getBelief());
+		int[] particles = new int[nParticles];
+		
+		for(int i = 0; i < nParticles; i++) {
+			particles[i] = table.sample(0, 0, rnd);
+		}
+		
+		return new ParticleBelief(particles);
+	}
+	
+	/**
+	 * Draw a state from the belief
+	 * @param rnd random generator
+	 * @return state
+	 */
+	public int sample(SplittableRandom rnd) {
+		return particles[rnd.nextInt(particles.length)];
+	}
+	
+	/**
+	 * Compute the successor belief after executing a and observing o. Each particle is moved by a transition drawn from
+	 * the model and weighted by P(o | a,sNext), after which the particles are resampled systematically. If no particle is
+	 * consistent with o, there is no successor belief, since the particles have lost track of the state, see reinvigorate.
+	 * @param pomdp model
+	 * @param transitions alias tables of the transition function of the model
+	 * @param a action a
+	 * @param o observation o
+	 * @param rnd random generator
+	 * @return successor belief with the same number of particles, or null if no particle is consistent with o
+	 */
+	public ParticleBelief update(POMDP pomdp, AliasTable transitions, int a, int o, SplittableRandom rnd) {
+		int n = particles.length;
+		int[] moved = new int[n];
+		double[] cumulativeWeight = new double[n];
+		double sum = 0.0;
+		
+		for(int i = 0; i < n; i++) {
+			moved[i] = transitions.sample(a, particles[i], rnd);
+			sum += pomdp.getObservationProbability(a, moved[i], o);
+			cumulativeWeight[i] = sum;
+		}
+		
+		if(sum == 0.0) {
+			return null;
+		}
+		
+		// systematic resampling draws one uniform offset and takes n equally spaced points on the cumulative weights
+		int[] resampled = new int[n];
+		double step = sum / n;
+		double u = rnd.nextDouble() * step;
+		int j = 0;
+		
+		for(int i = 0; i < n; i++) {
+			while(j < n-1 && cumulativeWeight[j] <= u) {
+				j++;
+			}
+			
+			resampled[i] = moved[j];
+			u += step;
+		}
+		
+		return new ParticleBelief(resampled);
+	}
+	
+	/**
+	 * Draw particles from the exact successor of the belief represented by the particles, which is proportional to
+	 * P(o | a,sNext) sum_i P(sNext | particle i,a). This replaces the update if none of the sampled transitions led to a
+	 * state that is consistent with o, since the successor still includes all transitions of the particles.
+	 * @param pomdp model
+	 * @param a action a
+	 * @param o observation o
+	 * @param rnd random generator
+	 * @return successor belief with the same number of particles, or null if no transition of a particle is consistent with o
+	 */
+	public ParticleBelief reinvigorate(POMDP pomdp, int a, int o, SplittableRandom rnd) {
+		SparseActionMatrix transitionFunction = pomdp.getSparseTransitionFunction();
+		SparseAccumulator predicted = new SparseAccumulator(pomdp.getNumStates());
+		
+		for(int s : particles) {
+			for(int k = transitionFunction.getRowStart(a, s); k < transitionFunction.getRowEnd(a, s); k++) {
+				predicted.add(transitionFunction.getColumn(a, k), transitionFunction.getValue(a, k));
+			}
+		}
+		
+		predicted.sortIndices();
+		double[] weights = new double[pomdp.getNumStates()];
+		double sum = 0.0;
+		
+		for(int i = 0; i < predicted.getNumEntries(); i++) {
+			int sNext = predicted.getEntryIndex(i);
+			weights[sNext] = predicted.getEntryValue(i) * pomdp.getObservationProbability(a, sNext, o);
+			sum += weights[sNext];
+		}
+		
+		if(sum == 0.0) {
+			return null;
+		}
+		
+		AliasTable table = AliasTable.fromDistribution(weights);
+		int[] resampled = new int[particles.length];
+		
+		for(int i = 0; i < resampled.length; i++) {
+			resampled[i] = table.sample(0, 0, rnd);
+		}
+		
+		return new ParticleBelief(resampled);
+	}
+	
+	/**
+	 * Convert to a belief vector containing the fraction of particles in each state
+	 * @param nStates number of states
+	 * @return belief
+	 */
+	public BeliefPoint toBeliefPoint(int nStates) {
+		double[] belief = new double[nStates];
+		
+		for(int s : particles) {
+			belief[s] += 1.0 / particles.length;
+		}
+		
+		return new BeliefPoint(belief);
+	}
+	
+	public int getNumParticles() {
+		return particles.length;
+	}
+}
@@ -0,0 +1,360 @@
+import java.util.Arrays;
+import java.util.Random;
+
+public class Perseus extends Solver {
+	
+	private int nBeliefs = 1000;
+	private int explorationHorizon = 50;
+	private int maxStages = 1000;
+	private double threshold = 0.01;
+	private double deduplicationDistance = -1.0; // if negative, sampled beliefs are not deduplicated
+	private Random rnd;
+	
+	private double[] beliefs; // belief i occupies positions i*nStates ... (i+1)*nStates-1
+	private int nSampled; // number of sampled beliefs, which is below nBeliefs if duplicates have been skipped
+	private AlphaVectorSet vectors;
+	private AlphaVectorSet vectorsNext;
+	
+	// buffers used by the backup, allocated once
+	private double[] predicted; // predicted belief sum_s P(sNext | s,a) b(s)
+	private double[] aoBeliefs; // unnormalized successor belief of observation o at positions o*nStates ... (o+1)*nStates-1
+	private int[] bestVectors; // best vector of each observation for the backed up action
+	private double[] weights;
+	private double[] value;
+	private double[] valueNext;
+	private int[] unimproved;
+	private int stageBackups; // number of belief backups in the current stage
+	
+	public Perseus(POMDP mdp, Random rnd) {
+		super(mdp);
+		this.rnd = rnd;
+	}
+	
+	/**
+	 * Set number of belief points sampled before solving
+	 * @param nBeliefs number of beliefs
+	 */
+	public void setNumBeliefs(int nBeliefs) {
+		this.nBeliefs = nBeliefs;
+	}
+	
+	/**
+	 * Set length of the random walks from the initial belief used to sample beliefs
+	 * @param explorationHorizon number of steps
+	 */
+	public void setExplorationHorizon(int explorationHorizon) {
+		this.explorationHorizon = explorationHorizon;
+	}
+	
+	/**
+	 * Set maximum number of backup stages
+	 * @param maxStages number of stages
+	 */
+	public void setMaxStages(int maxStages) {
+		this.maxStages = maxStages;
+	}
+	
+	/**
+	 * Set threshold on the maximum value change of a belief in a stage
+	 * @param threshold threshold
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Skip sampled beliefs within an L1 distance of a belief that has already been sampled. The random walks then continue
+	 * until nBeliefs distinct beliefs are found, or until nBeliefs consecutive beliefs were duplicates.
+	 * @param distance L1 distance, or a negative value to keep all sampled beliefs
+	 */
+	public void setBeliefDeduplication(double distance) {
+		this.deduplicationDistance = distance;
+	}
+	
+	public void Solve() {
+		int nStates = this.mdp.getNumStates();
+		sampleBeliefs();
+		
+		// at most one vector is added per belief in each stage
+		vectors = new AlphaVectorSet(nStates, nSampled);
+		vectorsNext = new AlphaVectorSet(nStates, nSampled);
+		predicted = new double[nStates];
+		aoBeliefs = new double[this.mdp.getNumObservations() * nStates];
+		bestVectors = new int[this.mdp.getNumObservations()];
+		weights = new double[nStates];
+		value = new double[nSampled];
+		valueNext = new double[nSampled];
+		unimproved = new int[nSampled];
+		
+		// initial lower bound min_{s,a} R(s,a) / (1 - discount)
+		int initial = vectors.allocate(0);
+		double minValue = this.mdp.getMinReward() / (1.0 - this.mdp.getDiscountFactor());
+		Arrays.fill(vectors.getArena(), vectors.getOffset(initial), vectors.getOffset(initial) + nStates, minValue);
+		
+		for(int i = 0; i < nSampled; i++) {
+			value[i] = vectors.dot(initial, beliefs, i * nStates);
+		}
+		
+		int stage = 0;
+		double delta = Double.POSITIVE_INFINITY;
+		
+		while(delta > threshold && stage < maxStages) {
+			stage++;
+			beginSweep();
+			delta = runStage();
+			endSweep(stage, delta, stageBackups);
+			
+			AlphaVectorSet swap = vectors;
+			vectors = vectorsNext;
+			vectorsNext = swap;
+			
+			double[] valueSwap = value;
+			value = valueNext;
+			valueNext = valueSwap;
+		}
+		
+		System.out.format("Value of the initial belief: %f%n", vectors.getValue(this.mdp.getInitialBelief()));
+		System.out.format("The amount of alpha vectors was: %d%n", vectors.size());
+		System.out.format("The amount of stages was: %d%n", stage);
+	}
+	
+	/**
+	 * Execute a randomized Perseus stage, which improves the value of every belief
+	 * @return maximum value change of a belief
+	 */
+	private double runStage() {
+		int nUnimproved = nSampled;
+		int nStates = this.mdp.getNumStates();
+		vectorsNext.clear();
+		stageBackups = 0;
+		
+		for(int i = 0; i < nSampled; i++) {
+			unimproved[i] = i;
+			valueNext[i] = Double.NEGATIVE_INFINITY;
+		}
+		
+		while(nUnimproved > 0) {
+			int i = unimproved[rnd.nextInt(nUnimproved)];
+			int j = backup(i);
+			stageBackups++;
+			
+			// keep the old vector if the backup does not improve the value of the belief
+			if(vectorsNext.dot(j, beliefs, i * nStates) < value[i]) {
+				vectorsNext.removeLast();
+				j = vectorsNext.add(vectors, vectors.getBestVector(beliefs, i * nStates));
+			}
+			
+			// remove beliefs for which the new vector improves the value
+			int n = 0;
+			
+			for(int k = 0; k < nUnimproved; k++) {
+				int b = unimproved[k];
+				valueNext[b] = Math.max(valueNext[b], vectorsNext.dot(j, beliefs, b * nStates));
+				
+				if(b != i && valueNext[b] < value[b]) {
+					unimproved[n++] = b;
+				}
+			}
+			
+			nUnimproved = n;
+		}
+		
+		double delta = 0.0;
+		
+		for(int i = 0; i < nSampled; i++) {
+			// values of beliefs improved earlier may still be increased by vectors added later
+			valueNext[i] = vectorsNext.dot(vectorsNext.getBestVector(beliefs, i * nStates), beliefs, i * nStates);
+			delta = Math.max(delta, Math.abs(valueNext[i] - value[i]));
+		}
+		
+		return delta;
+	}
+	
+	/**
+	 * Compute the backup of a belief and add it to vectorsNext
+	 * @param i belief index
+	 * @return index of the new vector
+	 */
+	private int backup(int i) {
+		int nStates = this.mdp.getNumStates();
+		int nObservations = this.mdp.getNumObservations();
+		int beliefOffset = i * nStates;
+		double discount = this.mdp.getDiscountFactor();
+		SparseActionMatrix transitionFunction = this.mdp.getSparseTransitionFunction();
+		SparseActionMatrix observationFunction = this.mdp.getSparseObservationFunction();
+		
+		int bestAction = -1;
+		double bestActionValue = Double.NEGATIVE_INFINITY;
+		
+		for(int a = 0; a < this.mdp.getNumActions(); a++) {
+			computeAOBeliefs(beliefOffset, a);
+			
+			// b . alpha_a = b . R(.,a) + discount * sum_o max_k alpha_k . tau(b,a,o)
+			double actionValue = 0.0;
+			
+			for(int s = 0; s < nStates; s++) {
+				actionValue += beliefs[beliefOffset + s] * this.mdp.getReward(s, a);
+			}
+			
+			for(int o = 0; o < nObservations; o++) {
+				int k = vectors.getBestVector(aoBeliefs, o * nStates);
+				actionValue += discount * vectors.dot(k, aoBeliefs, o * nStates);
+			}
+			
+			if(actionValue > bestActionValue) {
+				bestActionValue = actionValue;
+				bestAction = a;
+			}
+		}
+		
+		// construct alpha(s) = R(s,a) + discount * sum_sNext P(sNext | s,a) sum_o P(o | a,sNext) alpha_{k(o)}(sNext)
+		int a = bestAction;
+		computeAOBeliefs(beliefOffset, a);
+		
+		for(int o = 0; o < nObservations; o++) {
+			bestVectors[o] = vectors.getBestVector(aoBeliefs, o * nStates);
+		}
+		
+		double[] arena = vectors.getArena();
+		
+		for(int sNext = 0; sNext < nStates; sNext++) {
+			double w = 0.0;
+			
+			for(int k = observationFunction.getRowStart(a, sNext); k < observationFunction.getRowEnd(a, sNext); k++) {
+				int o = observationFunction.getColumn(a, k);
+				w += observationFunction.getValue(a, k) * arena[vectors.getOffset(bestVectors[o]) + sNext];
+			}
+			
+			weights[sNext] = w;
+		}
+		
+		int j = vectorsNext.allocate(a);
+		double[] arenaNext = vectorsNext.getArena();
+		int offset = vectorsNext.getOffset(j);
+		
+		for(int s = 0; s < nStates; s++) {
+			double sum = 0.0;
+			
+			for(int k = transitionFunction.getRowStart(a, s); k < transitionFunction.getRowEnd(a, s); k++) {
+				sum += transitionFunction.getValue(a, k) * weights[transitionFunction.getColumn(a, k)];
+			}
+			
+			arenaNext[offset + s] = this.mdp.getReward(s, a) + discount * sum;
+		}
+		
+		return j;
+	}
+	
+	/**
+	 * Compute the unnormalized successor beliefs P(o | a,sNext) sum_s P(sNext | s,a) b(s) of all observations
+	 * @param beliefOffset position of the belief
+	 * @param a action a
+	 */
+	private void computeAOBeliefs(int beliefOffset, int a) {
+		int nStates = this.mdp.getNumStates();
+		SparseActionMatrix transitionFunction = this.mdp.getSparseTransitionFunction();
+		SparseActionMatrix observationFunction = this.mdp.getSparseObservationFunction();
+		Arrays.fill(predicted, 0.0);
+		Arrays.fill(aoBeliefs, 0.0);
+		
+		for(int s = 0; s < nStates; s++) {
+			double bs = beliefs[beliefOffset + s];
+			if(bs == 0.0) continue;
+			
+			for(int k = transitionFunction.getRowStart(a, s); k < transitionFunction.getRowEnd(a, s); k++) {
+				predicted[transitionFunction.getColumn(a, k)] += transitionFunction.getValue(a, k) * bs;
+			}
+		}
+		
+		for(int sNext = 0; sNext < nStates; sNext++) {
+			double p = predicted[sNext];
+			if(p == 0.0) continue;
+			
+			for(int k = observationFunction.getRowStart(a, sNext); k < observationFunction.getRowEnd(a, sNext); k++) {
+				aoBeliefs[observationFunction.getColumn(a, k) * nStates + sNext] = observationFunction.getValue(a, k) * p;
+			}
+		}
+	}
+	
+	/**
+	 * Sample beliefs using random walks from the initial belief
+	 */
+	private void sampleBeliefs() {
+		int nStates = this.mdp.getNumStates();
+		beliefs = new double[nBeliefs * nStates];
+		BeliefPoint b = this.mdp.getInitialBelief();
+		BeliefIndex index = deduplicationDistance >= 0.0 ? new BeliefIndex() : null;
+		int duplicates = 0;
+		int step = 0;
+		nSampled = 0;
+		
+		while(nSampled < nBeliefs && duplicates < nBeliefs) {
+			boolean isNew = true;
+			
+			// the walk may return to a belief object that is already indexed, so the size of the index is compared
+			if(index != null) {
+				int indexed = index.size();
+				index.addIfAbsent(b, deduplicationDistance);
+				isNew = index.size() > indexed;
+			}
+			
+			if(isNew) {
+				b.copyTo(beliefs, nSampled * nStates);
+				nSampled++;
+				duplicates = 0;
+			}
+			else {
+				duplicates++;
+			}
+			
+			if(step == explorationHorizon) {
+				b = this.mdp.getInitialBelief();
+				step = 0;
+				continue;
+			}
+			
+			int a = rnd.nextInt(this.mdp.getNumActions());
+			this.mdp.prepareBelief(b);
+			int o = sampleObservation(b, a);
+			b = this.mdp.updateBelief(b, a, o);
+			step++;
+		}
+	}
+	
+	private int sampleObservation(BeliefPoint b, int a) {
+		double r = rnd.nextDouble();
+		double sum = 0.0;
+		int last = -1;
+		
+		for(int o = 0; o < this.mdp.getNumObservations(); o++) {
+			double p = b.getActionObservationProbability(a, o);
+			if(p == 0.0) continue;
+			
+			sum += p;
+			last = o;
+			
+			if(r < sum) {
+				return o;
+			}
+		}
+		
+		return last;
+	}
+	
+	/**
+	 * Get the value function computed by the last call to Solve
+	 * @return alpha vectors
+	 */
+	public AlphaVectorSet getAlphaVectors() {
+		return vectors;
+	}
+	
+	/**
+	 * Get the action of the policy in a belief
+	 * @param b belief
+	 * @return action
+	 */
+	public int getAction(BeliefPoint b) {
+		return vectors.getAction(b);
+	}
+}
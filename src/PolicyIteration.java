@@ -0,0 +1,239 @@
+import no.uib.cipr.matrix.DenseVector;
+import no.uib.cipr.matrix.sparse.BiCGstab;
+import no.uib.cipr.matrix.sparse.CompRowMatrix;
+import no.uib.cipr.matrix.sparse.DefaultIterationMonitor;
+import no.uib.cipr.matrix.sparse.ILU;
+import no.uib.cipr.matrix.sparse.IterativeSolverNotConvergedException;
+
+public class PolicyIteration extends Solver {
+	
+	private double[] qTable; // Q(s,a) at position s*nActions+a
+	private double[] value;
+	private double[] valueNext;
+	
+	// policy[s] is the greedy action in s, or -1 if all Q-values are negative and the value is 0 as in VI
+	private int[] policy;
+	
+	private int evaluationSteps = 20;
+	private boolean exactEvaluation = false;
+	private double threshold = 0.01;
+	private int evaluationFallbacks = 0;
+	
+	public PolicyIteration(POMDP mdp) {
+		super(mdp);
+		this.qTable = new double[this.mdp.getNumStates()*this.mdp.getNumActions()];
+		this.value = new double[this.mdp.getNumStates()];
+		this.valueNext = new double[this.mdp.getNumStates()];
+		this.policy = new int[this.mdp.getNumStates()];
+	}
+	
+	/**
+	 * Set number of iterative policy evaluation steps after each improvement step
+	 * @param k number of evaluation steps
+	 */
+	public void setEvaluationSteps(int k) {
+		assert k >= 0;
+		this.evaluationSteps = k;
+	}
+	
+	/**
+	 * Evaluate each policy exactly by solving (I - discount P) v = r with a sparse linear solver,
+	 * which makes the solver classic policy iteration
+	 * @param exactEvaluation true if policies should be evaluated exactly
+	 */
+	public void setExactEvaluation(boolean exactEvaluation) {
+		this.exactEvaluation = exactEvaluation;
+	}
+	
+	/**
+	 * Set threshold on the maximum value change of an improvement step, used with iterative evaluation
+	 * @param threshold threshold
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+	
+	public void Solve() {
+		int nActions = this.mdp.getNumActions();
+		int count = 0;
+		
+		for(int s = 0; s < this.mdp.getNumStates(); s++) {
+			policy[s] = -2;
+		}
+		
+		while(true) {
+			count++;
+			beginSweep();
+			
+			// improvement step, which is a single Bellman backup
+			boolean policyStable = true;
+			double delta = 0;
+			
+			for(int s = 0; s < this.mdp.getNumStates(); s++) {
+				double max = 0;
+				int best = -1;
+				
+				for(int a = 0; a < nActions; a++) {
+					qTable[s*nActions+a] = computeQValue(s, a, value);
+					
+					if(max < qTable[s*nActions+a]) {
+						max = qTable[s*nActions+a];
+						best = a;
+					}
+				}
+				
+				policyStable = policyStable && policy[s] == best;
+				policy[s] = best;
+				valueNext[s] = max;
+				delta = Math.max(delta, Math.abs(max - value[s]));
+			}
+			
+			swapValues();
+			
+			if(exactEvaluation ? policyStable : delta <= threshold) {
+				endSweep(count, delta, (long) this.mdp.getNumStates() * nActions);
+				break;
+			}
+			
+			if(exactEvaluation) {
+				if(evaluateExact()) {
+					endSweep(count, delta, (long) this.mdp.getNumStates() * nActions);
+				}
+				else {
+					endSweep(count, delta, (long) this.mdp.getNumStates() * (nActions + evaluationSteps));
+				}
+			}
+			else {
+				evaluateIterative(evaluationSteps);
+				// an evaluation step backs up the Q-value of the policy action only
+				endSweep(count, delta, (long) this.mdp.getNumStates() * (nActions + evaluationSteps));
+			}
+		}
+		
+		printQTable(qTable);
+		System.out.format("The amount of cycles was: %d%n", count);
+		
+		if(evaluationFallbacks > 0) {
+			System.out.format("The amount of exact evaluations replaced by iterative evaluation was: %d%n", evaluationFallbacks);
+		}
+	}
+	
+	/**
+	 * Apply the Bellman operator of the current policy k times
+	 * @param k number of steps
+	 */
+	private void evaluateIterative(int k) {
+		for(int i = 0; i < k; i++) {
+			for(int s = 0; s < this.mdp.getNumStates(); s++) {
+				valueNext[s] = policy[s] < 0 ? 0.0 : computeQValue(s, policy[s], value);
+			}
+			
+			swapValues();
+		}
+	}
+	
+	/**
+	 * Compute the value of the current policy by solving (I - discount P) v = r. If the linear solver does not converge,
+	 * the policy is evaluated iteratively instead, starting from the values of the previous policy.
+	 * @return true if the linear solver converged
+	 */
+	private boolean evaluateExact() {
+		int nStates = this.mdp.getNumStates();
+		double discount = this.mdp.getDiscountFactor();
+		SparseActionMatrix transitionFunction = this.mdp.getSparseTransitionFunction();
+		
+		// nonzero structure of each row is the transition row of the policy action plus the diagonal
+		int[][] nz = new int[nStates][];
+		
+		for(int s = 0; s < nStates; s++) {
+			if(policy[s] < 0) {
+				nz[s] = new int[] {s};
+				continue;
+			}
+			
+			int a = policy[s];
+			int rowStart = transitionFunction.getRowStart(a, s);
+			int rowEnd = transitionFunction.getRowEnd(a, s);
+			boolean hasDiagonal = transitionFunction.get(a, s, s) != 0.0;
+			int[] columns = new int[rowEnd - rowStart + (hasDiagonal ? 0 : 1)];
+			int i = 0;
+			
+			for(int k = rowStart; k < rowEnd; k++) {
+				int sNext = transitionFunction.getColumn(a, k);
+				
+				if(!hasDiagonal && sNext > s && (i == 0 || columns[i-1] < s)) {
+					columns[i++] = s;
+				}
+				
+				columns[i++] = sNext;
+			}
+			
+			if(i < columns.length) {
+				columns[i] = s;
+			}
+			
+			nz[s] = columns;
+		}
+		
+		CompRowMatrix A = new CompRowMatrix(nStates, nStates, nz);
+		DenseVector r = new DenseVector(nStates);
+		
+		for(int s = 0; s < nStates; s++) {
+			A.add(s, s, 1.0);
+			if(policy[s] < 0) continue;
+			
+			int a = policy[s];
+			r.set(s, this.mdp.getReward(s, a));
+			
+			for(int k = transitionFunction.getRowStart(a, s); k < transitionFunction.getRowEnd(a, s); k++) {
+				A.add(s, transitionFunction.getColumn(a, k), -discount * transitionFunction.getValue(a, k));
+			}
+		}
+		
+		// the solver writes its iterates into a copy, so a failed solve leaves the values of the previous policy
+		DenseVector v = new DenseVector(value, true);
+		BiCGstab solver = new BiCGstab(v);
+		ILU preconditioner = new ILU(A.copy());
+		preconditioner.setMatrix(A);
+		solver.setPreconditioner(preconditioner);
+		solver.setIterationMonitor(new DefaultIterationMonitor(10 * nStates, 1e-12, 1e-50, 1e5));
+		
+		try {
+			solver.solve(A, r, v);
+			System.arraycopy(v.getData(), 0, value, 0, nStates);
+			return true;
+		}
+		catch (IterativeSolverNotConvergedException e) {
+			evaluationFallbacks++;
+			evaluateIterative(evaluationSteps);
+			return false;
+		}
+	}
+	
+	private void swapValues() {
+		double[] valueSwap = value;
+		value = valueNext;
+		valueNext = valueSwap;
+	}
+	
+	/**
+	 * Get number of exact policy evaluations in which the linear solver did not converge, such that the policy was
+	 * evaluated iteratively instead
+	 * @return number of fallbacks to iterative evaluation
+	 */
+	public int getNumEvaluationFallbacks() {
+		return evaluationFallbacks;
+	}
+	
+	public int[] getPolicy() {
+		return policy;
+	}
+	
+	/**
+	 * Get Q-table
+	 * @return Q-table with Q(s,a) at position s*nActions+a
+	 */
+	public double[] getQTable() {
+		return qTable;
+	}
+}
@@ -0,0 +1,94 @@
+
+public class PrioritizedSweepingVI extends Solver {
+	
+	private double[] qTable; // Q(s,a) at position s*nActions+a
+	private double[] value; // value[s] = max(0, max_a Q(s,a)), updated in place
+	private double threshold = 0.01;
+	
+	public PrioritizedSweepingVI(POMDP mdp) {
+		super(mdp);
+		this.qTable = new double[this.mdp.getNumStates()*this.mdp.getNumActions()];
+		this.value = new double[this.mdp.getNumStates()];
+	}
+	
+	/**
+	 * Set threshold on the priority of a state, states with a lower priority are not backed up
+	 * @param threshold threshold
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+	
+	public void Solve() {
+		int nStates = this.mdp.getNumStates();
+		int nActions = this.mdp.getNumActions();
+		double discount = this.mdp.getDiscountFactor();
+		SparseActionMatrix predecessorFunction = this.mdp.getPredecessorFunction();
+		StatePriorityQueue queue = new StatePriorityQueue(nStates);
+		double[] residual = new double[nStates]; // upper bound on the Bellman residual of each state
+		long count = 0;
+		int sweeps = 0; // listeners receive an event after every nStates backups
+		
+		// the first backup of each state is prioritized by its Bellman residual
+		for(int s = 0; s < nStates; s++) {
+			for(int a = 0; a < nActions; a++) {
+				residual[s] = Math.max(residual[s], Math.abs(computeQValue(s, a, value) - qTable[s*nActions+a]));
+			}
+			
+			if(residual[s] > threshold) {
+				queue.set(s, residual[s]);
+			}
+		}
+		
+		beginSweep();
+		
+		while(!queue.isEmpty() && queue.peekPriority() > threshold) {
+			int s = queue.poll();
+			double max = 0;
+			count++;
+			
+			for(int a = 0; a < nActions; a++) {
+				qTable[s*nActions+a] = computeQValue(s, a, value);
+				
+				if(max < qTable[s*nActions+a]) {
+					max = qTable[s*nActions+a];
+				}
+			}
+			
+			double change = Math.abs(max - value[s]);
+			value[s] = max;
+			residual[s] = 0.0;
+			
+			// the residual of a predecessor p increases by at most discount * max_a P(s | p,a) * change
+			for(int k = predecessorFunction.getRowStart(0, s); k < predecessorFunction.getRowEnd(0, s); k++) {
+				int p = predecessorFunction.getColumn(0, k);
+				residual[p] += discount * predecessorFunction.getValue(0, k) * change;
+				
+				if(residual[p] > threshold) {
+					queue.set(p, residual[p]);
+				}
+			}
+			
+			if(count % nStates == 0) {
+				sweeps++;
+				endSweep(sweeps, queue.isEmpty() ? 0.0 : queue.peekPriority(), (long) nStates * nActions);
+				beginSweep();
+			}
+		}
+		
+		if(count % nStates != 0) {
+			endSweep(sweeps + 1, queue.isEmpty() ? 0.0 : queue.peekPriority(), (count % nStates) * nActions);
+		}
+		
+		printQTable(qTable);
+		System.out.format("The amount of backups was: %d%n", count);
+	}
+	
+	/**
+	 * Get Q-table
+	 * @return Q-table with Q(s,a) at position s*nActions+a
+	 */
+	public double[] getQTable() {
+		return qTable;
+	}
+}
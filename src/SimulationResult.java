@@ -0,0 +1,96 @@
+/**
+ * Discounted returns of simulated episodes, summarized by their mean and a normal confidence interval
+ */
+public class SimulationResult {
+	private static final double Z_95 = 1.959963984540054; // 97.5% quantile of the standard normal distribution
+	
+	private final long episodes;
+	private final long steps;
+	private final double mean;
+	private final double variance;
+	private final long elapsedNanos;
+	
+	public SimulationResult(long episodes, long steps, double mean, double variance, long elapsedNanos) {
+		this.episodes = episodes;
+		this.steps = steps;
+		this.mean = mean;
+		this.variance = variance;
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	/**
+	 * Get number of simulated episodes
+	 * @return number of episodes
+	 */
+	public long getNumEpisodes() {
+		return episodes;
+	}
+	
+	/**
+	 * Get total number of simulated steps
+	 * @return number of steps
+	 */
+	public long getNumSteps() {
+		return steps;
+	}
+	
+	/**
+	 * Get mean discounted return of the episodes
+	 * @return mean return
+	 */
+	public double getMean() {
+		return mean;
+	}
+	
+	/**
+	 * Get sample standard deviation of the discounted returns
+	 * @return standard deviation
+	 */
+	public double getStandardDeviation() {
+		return Math.sqrt(variance);
+	}
+	
+	/**
+	 * Get standard error of the mean
+	 * @return standard deviation / sqrt(episodes)
+	 */
+	public double getStandardError() {
+		return Math.sqrt(variance / episodes);
+	}
+	
+	/**
+	 * Get half width of the 95% confidence interval of the expected discounted return
+	 * @return half width
+	 */
+	public double getConfidenceHalfWidth() {
+		return Z_95 * getStandardError();
+	}
+	
+	/**
+	 * Get lower end of the 95% confidence interval of the expected discounted return
+	 * @return lower end
+	 */
+	public double getLowerBound() {
+		return mean - getConfidenceHalfWidth();
+	}
+	
+	/**
+	 * Get upper end of the 95% confidence interval of the expected discounted return
+	 * @return upper end
+	 */
+	public double getUpperBound() {
+		return mean + getConfidenceHalfWidth();
+	}
+	
+	/**
+	 * Get wall time of the simulation
+	 * @return time in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+	
+	public String toString() {
+		return String.format("%.4f +- %.4f (95%%, %d episodes)", mean, getConfidenceHalfWidth(), episodes);
+	}
+}
@@ -0,0 +1,339 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Monte Carlo evaluation of policies, which simulates episodes of an MDP or POMDP and reports the mean discounted return.
+ * Transitions, observations and initial states are drawn from alias tables in constant time. Episodes are divided into
+ * chunks, and each chunk draws from its own SplittableRandom stream split from the seed, so the result of a seed does not
+ * depend on whether the chunks are simulated sequentially or in parallel.
+ */
+public class Simulator {
+	/**
+	 * Policy that selects actions based on the state, for instance the greedy policy of a Q-table
+	 */
+	public interface StatePolicy {
+		int getAction(int t, int s);
+	}
+	
+	/**
+	 * Policy that selects actions based on the belief, for instance the policy of a set of alpha vectors
+	 */
+	public interface BeliefPolicy {
+		int getAction(BeliefPoint b);
+	}
+	
+	/**
+	 * Single episode, which returns its discounted return
+	 */
+	private interface Episode {
+		double run(SplittableRandom rnd);
+	}
+	
+	private MDP mdp;
+	private POMDP pomdp; // null if the model is an MDP
+	private AliasTable transitions; // null if the transitions are time-dependent
+	private AliasTable[] timeTransitions; // tables of each time step, null if the transitions are stationary
+	private AliasTable observations;
+	private AliasTable initialStates;
+	
+	private ForkJoinPool pool = null; // if null, episodes are simulated sequentially
+	private int chunkSize = 1024; // number of episodes simulated by a single task
+	
+	/**
+	 * Statistics of the chunks of one simulation, merged in chunk order after the simulation. Each simulation has its
+	 * own statistics, so concurrent evaluations with the same simulator do not overwrite each other's results.
+	 */
+	private static class ChunkStatistics {
+		private final long[] steps;
+		private final double[] mean;
+		private final double[] m2; // sum of squared deviations from the chunk mean
+		
+		ChunkStatistics(int nChunks) {
+			this.steps = new long[nChunks];
+			this.mean = new double[nChunks];
+			this.m2 = new double[nChunks];
+		}
+	}
+	
+	/**
+	 * Create a simulator, which builds the alias tables of the model. An MDP starts in its initial state, and a POMDP
+	 * starts in a state drawn from its initial belief.
+	 * @param mdp model
+	 */
+	public Simulator(MDP mdp) {
+		this.mdp = mdp;
+		
+		if(mdp.hasTimeDependentTransitions()) {
+			timeTransitions = new AliasTable[mdp.getNumTimeSteps()];
+			
+			for(int t=0; t<mdp.getNumTimeSteps(); t++) {
+				timeTransitions[t] = new AliasTable(getTransitionFunction(t));
+			}
+		}
+		else {
+			transitions = new AliasTable(mdp.getSparseTransitionFunction());
+		}
+		
+		if(mdp instanceof POMDP) {
+			pomdp = (POMDP) mdp;
+			observations = new AliasTable(pomdp.getSparseObservationFunction());
+			initialStates = AliasTable.fromDistribution(pomdp.getInitialBelief().getBelief());
+		}
+	}
+	
+	/**
+	 * Create a simulator that simulates chunks of episodes in parallel using the given pool
+	 * @param mdp model
+	 * @param pool fork-join pool
+	 */
+	public Simulator(MDP mdp, ForkJoinPool pool) {
+		this(mdp);
+		this.pool = pool;
+	}
+	
+	/**
+	 * Set number of episodes simulated from a single random stream. Results of a seed depend on the chunk size.
+	 * @param chunkSize chunk size
+	 */
+	public void setChunkSize(int chunkSize) {
+		assert chunkSize > 0;
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * Get the greedy policy of a Q-table, such as the Q-table of VI
+	 * @param qTable Q-table with Q(s,a) at position s*nActions+a
+	 * @param nActions number of actions
+	 * @return policy that selects the first action with maximal Q-value
+	 */
+	public static StatePolicy getGreedyPolicy(final double[] qTable, final int nActions) {
+		return new StatePolicy() {
+			public int getAction(int t, int s) {
+				int best = 0;
+				
+				for(int a = 1; a < nActions; a++) {
+					if(qTable[s*nActions+a] > qTable[s*nActions+best]) {
+						best = a;
+					}
+				}
+				
+				return best;
+			}
+		};
+	}
+	
+	/**
+	 * Estimate the expected discounted return of a policy that observes the state
+	 * @param policy policy
+	 * @param episodes number of episodes
+	 * @param horizon number of steps of each episode
+	 * @param seed seed of the random streams
+	 * @return mean discounted return with confidence interval
+	 */
+	public SimulationResult evaluate(final StatePolicy policy, long episodes, final int horizon, long seed) {
+		checkHorizon(horizon);
+		
+		return simulate(new Episode() {
+			public double run(SplittableRandom rnd) {
+				int s = pomdp == null ? mdp.getInitialState() : initialStates.sample(0, 0, rnd);
+				double discountedReturn = 0.0;
+				double discount = 1.0;
+				
+				for(int t = 0; t < horizon; t++) {
+					int a = policy.getAction(t, s);
+					discountedReturn += discount * mdp.getReward(t, s, a);
+					discount *= mdp.getDiscountFactor();
+					s = sampleNextState(t, s, a, rnd);
+				}
+				
+				return discountedReturn;
+			}
+		}, episodes, horizon, seed);
+	}
+	
+	/**
+	 * Estimate the expected discounted return of a policy that tracks the belief using updateBelief. In parallel
+	 * simulations a successor cache of the POMDP is shared by all threads, so its lookups contend for its lock and
+	 * its hit and eviction counts depend on the thread schedule. The simulated returns do not depend on the cache.
+	 * @param policy policy
+	 * @param episodes number of episodes
+	 * @param horizon number of steps of each episode
+	 * @param seed seed of the random streams
+	 * @return mean discounted return with confidence interval
+	 */
+	public SimulationResult evaluate(final BeliefPolicy policy, long episodes, final int horizon, long seed) {
+		if(pomdp == null) {
+			throw new IllegalArgumentException("Belief policies can only be evaluated on a POMDP");
+		}
+		
+		checkHorizon(horizon);
+		
+		return simulate(new Episode() {
+			public double run(SplittableRandom rnd) {
+				BeliefPoint b = pomdp.getInitialBelief();
+				int s = initialStates.sample(0, 0, rnd);
+				double discountedReturn = 0.0;
+				double discount = 1.0;
+				
+				for(int t = 0; t < horizon; t++) {
+					int a = policy.getAction(b);
+					discountedReturn += discount * pomdp.getReward(t, s, a);
+					discount *= pomdp.getDiscountFactor();
+					s = sampleNextState(t, s, a, rnd);
+					
+					if(t+1 < horizon) {
+						int o = observations.sample(a, s, rnd);
+						b = pomdp.updateBelief(b, a, o);
+					}
+				}
+				
+				return discountedReturn;
+			}
+		}, episodes, horizon, seed);
+	}
+	
+	private int sampleNextState(int t, int s, int a, SplittableRandom rnd) {
+		return transitions != null ? transitions.sample(a, s, rnd) : timeTransitions[t].sample(a, s, rnd);
+	}
+	
+	private void checkHorizon(int horizon) {
+		if(horizon < 0 || (mdp.isTimeDependent() && horizon > mdp.getNumTimeSteps())) {
+			throw new IllegalArgumentException("Horizon "+horizon+" is not supported by a model with "+mdp.getNumTimeSteps()+" time steps");
+		}
+	}
+	
+	/**
+	 * Get the transition function of a time step as sparse matrices
+	 * @param t time t
+	 * @return sparse matrices, where row s of action a contains P(sNext | s,a) at time t
+	 */
+	private SparseActionMatrix getTransitionFunction(int t) {
+		int nStates = mdp.getNumStates();
+		double[] transitionFunction = mdp.getTimeTransitionFunction();
+		SparseActionMatrix.Builder builder = new SparseActionMatrix.Builder(mdp.getNumActions(), nStates, nStates);
+		
+		for(int s=0; s<nStates; s++) {
+			for(int a=0; a<mdp.getNumActions(); a++) {
+				int offset = mdp.getTimeTransitionOffset(t, s, a);
+				
+				for(int sNext=0; sNext<nStates; sNext++) {
+					builder.add(a, s, sNext, transitionFunction[offset+sNext]);
+				}
+			}
+		}
+		
+		return builder.build();
+	}
+	
+	/**
+	 * Simulate episodes in chunks and merge the statistics of the chunks
+	 * @param episode episode
+	 * @param episodes number of episodes
+	 * @param horizon number of steps of each episode
+	 * @param seed seed of the random streams
+	 * @return result
+	 */
+	private SimulationResult simulate(Episode episode, long episodes, int horizon, long seed) {
+		assert episodes > 0;
+		long start = System.nanoTime();
+		int nChunks = (int) ((episodes + chunkSize - 1) / chunkSize);
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom[] streams = new SplittableRandom[nChunks];
+		
+		// streams are split in chunk order before the simulation, so they are independent of the scheduling
+		for(int i = 0; i < nChunks; i++) {
+			streams[i] = root.split();
+		}
+		
+		ChunkStatistics statistics = new ChunkStatistics(nChunks);
+		
+		if(pool == null) {
+			for(int i = 0; i < nChunks; i++) {
+				simulateChunk(episode, i, getChunkEpisodes(i, episodes), horizon, streams[i], statistics);
+			}
+		}
+		else {
+			pool.invoke(new ChunkTask(episode, 0, nChunks, episodes, horizon, streams, statistics));
+		}
+		
+		// merge the chunks using the pairwise update of the mean and the sum of squared deviations
+		long n = 0;
+		long steps = 0;
+		double mean = 0.0;
+		double m2 = 0.0;
+		
+		for(int i = 0; i < nChunks; i++) {
+			long nChunk = getChunkEpisodes(i, episodes);
+			long nTotal = n + nChunk;
+			double delta = statistics.mean[i] - mean;
+			mean += delta * nChunk / nTotal;
+			m2 += statistics.m2[i] + delta * delta * ((double) n * nChunk / nTotal);
+			n = nTotal;
+			steps += statistics.steps[i];
+		}
+		
+		double variance = n > 1 ? m2 / (n - 1) : 0.0;
+		return new SimulationResult(n, steps, mean, variance, System.nanoTime() - start);
+	}
+	
+	private long getChunkEpisodes(int i, long episodes) {
+		return Math.min(chunkSize, episodes - (long) i * chunkSize);
+	}
+	
+	/**
+	 * Simulate the episodes of a chunk and store their mean and sum of squared deviations
+	 * @param episode episode
+	 * @param i chunk index
+	 * @param n number of episodes of the chunk
+	 * @param horizon number of steps of each episode
+	 * @param rnd random stream of the chunk
+	 * @param statistics statistics of the simulation, which receive the statistics of chunk i
+	 */
+	private void simulateChunk(Episode episode, int i, long n, int horizon, SplittableRandom rnd, ChunkStatistics statistics) {
+		double mean = 0.0;
+		double m2 = 0.0;
+		
+		for(long k = 1; k <= n; k++) {
+			double x = episode.run(rnd);
+			double delta = x - mean;
+			mean += delta / k;
+			m2 += delta * (x - mean);
+		}
+		
+		statistics.steps[i] = n * horizon;
+		statistics.mean[i] = mean;
+		statistics.m2[i] = m2;
+	}
+	
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Episode episode;
+		private final int iFrom;
+		private final int iTo;
+		private final long episodes;
+		private final int horizon;
+		private final SplittableRandom[] streams;
+		private final ChunkStatistics statistics;
+		
+		ChunkTask(Episode episode, int iFrom, int iTo, long episodes, int horizon, SplittableRandom[] streams, ChunkStatistics statistics) {
+			this.episode = episode;
+			this.iFrom = iFrom;
+			this.iTo = iTo;
+			this.episodes = episodes;
+			this.horizon = horizon;
+			this.streams = streams;
+			this.statistics = statistics;
+		}
+		
+		protected void compute() {
+			if(iTo - iFrom == 1) {
+				simulateChunk(episode, iFrom, getChunkEpisodes(iFrom, episodes), horizon, streams[iFrom], statistics);
+				return;
+			}
+			
+			int iMid = (iFrom + iTo) >>> 1;
+			invokeAll(new ChunkTask(episode, iFrom, iMid, episodes, horizon, streams, statistics), new ChunkTask(episode, iMid, iTo, episodes, horizon, streams, statistics));
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * Value function returned by an anytime solver, with a bound on its distance to the optimal value function
+ */
+public class SolveResult {
+	public enum Status {
+		CONVERGED, // the Bellman error is at most epsilon
+		ITERATION_LIMIT, // the maximum number of sweeps has been executed
+		TIME_LIMIT, // the wall-clock budget has been used up
+		CANCELLED // the cancellation token has been set
+	}
+	
+	private final Status status;
+	private final double[] qTable;
+	private final double[] valueFunction;
+	private final int iterations;
+	private final double bellmanError;
+	private final double errorBound;
+	private final long elapsedNanos;
+	
+	public SolveResult(Status status, double[] qTable, double[] valueFunction, int iterations, double bellmanError, double errorBound, long elapsedNanos) {
+		this.status = status;
+		this.qTable = qTable;
+		this.valueFunction = valueFunction;
+		this.iterations = iterations;
+		this.bellmanError = bellmanError;
+		this.errorBound = errorBound;
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	/**
+	 * Get the reason why the solver stopped
+	 * @return status
+	 */
+	public Status getStatus() {
+		return status;
+	}
+	
+	/**
+	 * Get Q-table, which can be passed to setInitialQTable to warm start a later solve
+	 * @return Q-table with Q(s,a) at position s*nActions+a
+	 */
+	public double[] getQTable() {
+		return qTable;
+	}
+	
+	/**
+	 * Get state values
+	 * @return value of each state
+	 */
+	public double[] getValueFunction() {
+		return valueFunction;
+	}
+	
+	/**
+	 * Get number of sweeps completed during the solve
+	 * @return number of sweeps
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+	
+	/**
+	 * Get Bellman residual max_s |T(x)(s) - x(s)| of the state values x read by the last completed sweep, where T is the backup
+	 * @return Bellman error, or infinity if it is unknown because no sweep has been completed since the start
+	 */
+	public double getBellmanError() {
+		return bellmanError;
+	}
+	
+	/**
+	 * Get upper bound discount / (1 - discount) * bellmanError on the maximum distance between the returned state values
+	 * and the fixed point of the backup
+	 * @return error bound
+	 */
+	public double getErrorBound() {
+		return errorBound;
+	}
+	
+	/**
+	 * Get wall time of the solve
+	 * @return time in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+}
@@ -1,12 +1,148 @@
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
 public class Solver {
 
 	public POMDP mdp;
 	
+	private List<SolverListener> listeners = new ArrayList<SolverListener>();
+	private boolean sweepStarted = false;
+	private long sweepStartTime;
+	private long[] sweepStartThreads; // ids of the live threads at the start of the sweep, or null if allocation is not measured
+	private long[] sweepStartBytes; // allocated bytes of these threads
+	
 	public Solver(POMDP mdp) {
 		this.mdp = mdp;
 	}
-
-
+	
+	/**
+	 * Add a listener that receives an event after each sweep of the solver
+	 * @param listener listener
+	 */
+	public void addListener(SolverListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeListener(SolverListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Record the start time and allocation counters of a sweep, does nothing if there are no listeners
+	 */
+	protected void beginSweep() {
+		if(listeners.isEmpty()) return;
+		
+		sweepStartThreads = getAllocationBean() == null ? null : getAllocationBean().getAllThreadIds();
+		sweepStartBytes = sweepStartThreads == null ? null : getAllocationBean().getThreadAllocatedBytes(sweepStartThreads);
+		sweepStartTime = System.nanoTime();
+		sweepStarted = true;
+	}
+	
+	/**
+	 * Notify the listeners that the sweep started by beginSweep has been completed
+	 * @param iteration number of the sweep, starting at 1
+	 * @param delta convergence measure after the sweep
+	 * @param backups number of Q-values Q(s,a) computed in the sweep, or number of beliefs backed up by a point-based solver
+	 */
+	protected void endSweep(int iteration, double delta, long backups) {
+		if(listeners.isEmpty() || !sweepStarted) return;
+		
+		long wallTime = System.nanoTime() - sweepStartTime;
+		long allocated = -1;
+		sweepStarted = false;
+		
+		// the threads alive at the start are measured again, so threads created during the sweep are counted from the next sweep
+		if(sweepStartThreads != null) {
+			long[] bytes = getAllocationBean().getThreadAllocatedBytes(sweepStartThreads);
+			allocated = 0;
+			
+			for(int i = 0; i < bytes.length; i++) {
+				// threads that terminated report -1
+				if(bytes[i] >= 0 && sweepStartBytes[i] >= 0) {
+					allocated += bytes[i] - sweepStartBytes[i];
+				}
+			}
+		}
+		
+		SweepEvent event = new SweepEvent(getClass().getSimpleName(), this.mdp.getName(), iteration, delta, wallTime, backups, allocated, this.mdp.getNumBeliefPreparations(), this.mdp.getNumBeliefUpdates());
+		
+		for(SolverListener listener : listeners) {
+			listener.sweepCompleted(event);
+		}
+	}
+	
+	/**
+	 * Get the bean that measures the allocated bytes of each thread, which includes worker threads of parallel solvers
+	 * @return bean, or null if the JVM does not measure allocation
+	 */
+	private static com.sun.management.ThreadMXBean getAllocationBean() {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		
+		if(!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		
+		com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+		
+		if(!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+			return null;
+		}
+		
+		return allocationBean;
+	}
+	
+	/**
+	 * Compute Q(s,a) = R(s,a) + discount * sum_sNext P(sNext | s,a) value[sNext], visiting only nonzero transitions
+	 * @param s state s
+	 * @param a action a
+	 * @param value state values
+	 * @return Q(s,a)
+	 */
+	protected double computeQValue(int s, int a, double[] value) {
+		SparseActionMatrix transitionFunction = this.mdp.getSparseTransitionFunction();
+		double sum = 0.0;
+		
+		for(int k = transitionFunction.getRowStart(a, s); k < transitionFunction.getRowEnd(a, s); k++) {
+			sum = sum + transitionFunction.getValue(a, k)*value[transitionFunction.getColumn(a, k)];
+		}
+		
+		return this.mdp.getReward(s, a) + this.mdp.getDiscountFactor()*sum;
+	}
+	
+	/**
+	 * Print a Q-table stored in a single array, with Q(s,a) at position s*nActions+a
+	 * @param qTable Q-table
+	 */
+	protected void printQTable(double[] qTable) {
+		int nActions = this.mdp.getNumActions();
+		
+		for(int s=0; s<this.mdp.getNumStates(); s++) {
+			for(int a=0; a<nActions; a++) {
+				System.out.format("%06.3f  ", qTable[s*nActions+a]);
+			}
+			System.out.format("%n");
+		}
+		System.out.format("%n%n%n");
+	}
+	
+	/**
+	 * Print a single precision Q-table stored in a single array, with Q(s,a) at position s*nActions+a
+	 * @param qTable Q-table
+	 */
+	protected void printQTable(float[] qTable) {
+		int nActions = this.mdp.getNumActions();
+		
+		for(int s=0; s<this.mdp.getNumStates(); s++) {
+			for(int a=0; a<nActions; a++) {
+				System.out.format("%06.3f  ", qTable[s*nActions+a]);
+			}
+			System.out.format("%n");
+		}
+		System.out.format("%n%n%n");
+	}
 	
 }
@@ -0,0 +1,10 @@
+/**
+ * Receives progress events of a solver, register it using Solver.addListener
+ */
+public interface SolverListener {
+	/**
+	 * Called after the solver completed a sweep, on the thread that called Solve
+	 * @param event metrics of the sweep
+	 */
+	void sweepCompleted(SweepEvent event);
+}
@@ -0,0 +1,93 @@
+import java.util.Arrays;
+
+/**
+ * Accumulator for sums into a vector of length n with few nonzero entries. Values are added to a dense scratch array,
+ * and the positions that have been written are kept in a list, such that clearing the accumulator and visiting its
+ * entries takes time proportional to the number of entries rather than n. The scratch array is reused by all sums,
+ * so an accumulator must not be shared by threads.
+ */
+public class SparseAccumulator {
+	private final double[] values;
+	private final boolean[] occupied;
+	private final int[] indices; // positions that have been written, in order of the first write until sortIndices
+	private int nEntries = 0;
+	
+	public SparseAccumulator(int n) {
+		this.values = new double[n];
+		this.occupied = new boolean[n];
+		this.indices = new int[n];
+	}
+	
+	/**
+	 * Add a value to position i
+	 * @param i position
+	 * @param value value
+	 */
+	public void add(int i, double value) {
+		if(!occupied[i]) {
+			occupied[i] = true;
+			indices[nEntries++] = i;
+		}
+		
+		values[i] += value;
+	}
+	
+	/**
+	 * Get number of positions that have been written since the last clear
+	 * @return number of entries
+	 */
+	public int getNumEntries() {
+		return nEntries;
+	}
+	
+	public int getEntryIndex(int k) {
+		return indices[k];
+	}
+	
+	public double getEntryValue(int k) {
+		return values[indices[k]];
+	}
+	
+	/**
+	 * Sort the entries by position, which makes sums over the entries identical to sums over a dense vector.
+	 * If many positions have been written, they are collected by a scan of the scratch array instead of a sort.
+	 */
+	public void sortIndices() {
+		if(nEntries > values.length / 16) {
+			int k = 0;
+			
+			for(int i=0; i<values.length; i++) {
+				if(occupied[i]) indices[k++] = i;
+			}
+		}
+		else {
+			Arrays.sort(indices, 0, nEntries);
+		}
+	}
+	
+	/**
+	 * Copy the accumulated vector into a new dense array
+	 * @return vector of length n
+	 */
+	public double[] toDense() {
+		double[] dense = new double[values.length];
+		
+		for(int k=0; k<nEntries; k++) {
+			dense[indices[k]] = values[indices[k]];
+		}
+		
+		return dense;
+	}
+	
+	/**
+	 * Reset all entries to zero
+	 */
+	public void clear() {
+		for(int k=0; k<nEntries; k++) {
+			values[indices[k]] = 0.0;
+			occupied[indices[k]] = false;
+		}
+		
+		nEntries = 0;
+	}
+}
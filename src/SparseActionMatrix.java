@@ -0,0 +1,343 @@
+import java.util.Arrays;
+
+public class SparseActionMatrix {
+	protected int nActions;
+	protected int nRows;
+	protected int nColumns;
+
+	// all rows are stored in one array, row r of action a has index r*nActions+a and occupies
+	// positions rowStart[r*nActions+a] ... rowStart[r*nActions+a+1]-1 of columns and values
+	private int[] rowStart;
+	private int[] columns;
+	private double[] values;
+
+	public SparseActionMatrix(int nActions, int nRows, int nColumns, int[] rowStart, int[] columns, double[] values) {
+		assert rowStart.length == nActions*nRows+1 && columns.length == values.length && columns.length == rowStart[nActions*nRows];
+		this.nActions = nActions;
+		this.nRows = nRows;
+		this.nColumns = nColumns;
+		this.rowStart = rowStart;
+		this.columns = columns;
+		this.values = values;
+	}
+
+	/**
+	 * Constructor for subclasses that provide their own storage by overriding the accessors
+	 */
+	protected SparseActionMatrix(int nActions, int nRows, int nColumns) {
+		this.nActions = nActions;
+		this.nRows = nRows;
+		this.nColumns = nColumns;
+	}
+
+	/**
+	 * Create sparse matrices from a dense transition function
+	 * @param transitionFunction transition function indexed as [s][a][sNext]
+	 * @return sparse matrices, where row s of action a contains P(sNext | s,a)
+	 */
+	public static SparseActionMatrix fromTransitionFunction(double[][][] transitionFunction) {
+		int nStates = transitionFunction.length;
+		int nActions = nStates > 0 ? transitionFunction[0].length : 0;
+		Builder builder = new Builder(nActions, nStates, nStates);
+
+		for(int s=0; s<nStates; s++) {
+			for(int a=0; a<nActions; a++) {
+				for(int sNext=0; sNext<nStates; sNext++) {
+					builder.add(a, s, sNext, transitionFunction[s][a][sNext]);
+				}
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Create sparse matrices from a dense observation function
+	 * @param observationFunction observation function indexed as [a][sNext][o]
+	 * @param nObservations number of observations
+	 * @return sparse matrices, where row sNext of action a contains P(o | a,sNext)
+	 */
+	public static SparseActionMatrix fromObservationFunction(double[][][] observationFunction, int nObservations) {
+		int nActions = observationFunction.length;
+		int nStates = nActions > 0 ? observationFunction[0].length : 0;
+		Builder builder = new Builder(nActions, nStates, nObservations);
+
+		for(int a=0; a<nActions; a++) {
+			for(int sNext=0; sNext<nStates; sNext++) {
+				for(int o=0; o<nObservations; o++) {
+					builder.add(a, sNext, o, observationFunction[a][sNext][o]);
+				}
+			}
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Convert to a dense transition function indexed as [s][a][sNext]
+	 * @return dense transition function
+	 */
+	public double[][][] toTransitionFunction() {
+		double[][][] transitionFunction = new double[nRows][nActions][nColumns];
+
+		for(int a=0; a<nActions; a++) {
+			for(int s=0; s<nRows; s++) {
+				for(int k=getRowStart(a, s); k<getRowEnd(a, s); k++) {
+					transitionFunction[s][a][getColumn(a, k)] = getValue(a, k);
+				}
+			}
+		}
+
+		return transitionFunction;
+	}
+
+	/**
+	 * Convert to a dense observation function indexed as [a][sNext][o]
+	 * @return dense observation function
+	 */
+	public double[][][] toObservationFunction() {
+		double[][][] observationFunction = new double[nActions][nRows][nColumns];
+
+		for(int a=0; a<nActions; a++) {
+			for(int sNext=0; sNext<nRows; sNext++) {
+				for(int k=getRowStart(a, sNext); k<getRowEnd(a, sNext); k++) {
+					observationFunction[a][sNext][getColumn(a, k)] = getValue(a, k);
+				}
+			}
+		}
+
+		return observationFunction;
+	}
+
+	/**
+	 * Get first position of a row
+	 * @param a action a
+	 * @param row row
+	 * @return position of the first nonzero entry in the row
+	 */
+	public int getRowStart(int a, int row) {
+		return rowStart[row*nActions+a];
+	}
+
+	/**
+	 * Get end position of a row (exclusive)
+	 * @param a action a
+	 * @param row row
+	 * @return position after the last nonzero entry in the row
+	 */
+	public int getRowEnd(int a, int row) {
+		return rowStart[row*nActions+a+1];
+	}
+
+	/**
+	 * Get column index of the entry at a position
+	 * @param a action a
+	 * @param k position
+	 * @return column index
+	 */
+	public int getColumn(int a, int k) {
+		return columns[k];
+	}
+
+	/**
+	 * Get value of the entry at a position
+	 * @param a action a
+	 * @param k position
+	 * @return value
+	 */
+	public double getValue(int a, int k) {
+		return values[k];
+	}
+
+	/**
+	 * Set value of the entry at a position
+	 * @param a action a
+	 * @param k position
+	 * @param value new value
+	 */
+	public void setValue(int a, int k, double value) {
+		values[k] = value;
+	}
+
+	/**
+	 * Get the value at a given row and column, using binary search within the row
+	 * @param a action a
+	 * @param row row
+	 * @param column column
+	 * @return value, or 0.0 if the entry is not stored
+	 */
+	public double get(int a, int row, int column) {
+		assert a<nActions && row<nRows && column<nColumns;
+		int low = getRowStart(a, row);
+		int high = getRowEnd(a, row)-1;
+
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int col = getColumn(a, mid);
+
+			if(col < column) {
+				low = mid + 1;
+			}
+			else if(col > column) {
+				high = mid - 1;
+			}
+			else {
+				return getValue(a, mid);
+			}
+		}
+
+		return 0.0;
+	}
+
+	/**
+	 * Create a copy of sparse matrices that stores its entries on the heap, for instance to modify matrices that are
+	 * read-only views of a file
+	 * @param m sparse matrices
+	 * @return matrices with the same nonzero entries
+	 */
+	public static SparseActionMatrix copyOf(SparseActionMatrix m) {
+		int nActions = m.getNumActions();
+		int nRows = m.getNumRows();
+		int[] rowStart = new int[nActions*nRows+1];
+		int[] columns = new int[m.getNumNonZeros()];
+		double[] values = new double[columns.length];
+		int n = 0;
+
+		for(int r=0; r<nRows; r++) {
+			for(int a=0; a<nActions; a++) {
+				for(int k=m.getRowStart(a, r); k<m.getRowEnd(a, r); k++) {
+					columns[n] = m.getColumn(a, k);
+					values[n] = m.getValue(a, k);
+					n++;
+				}
+
+				rowStart[r*nActions+a+1] = n;
+			}
+		}
+
+		return new SparseActionMatrix(nActions, nRows, m.getNumColumns(), rowStart, columns, values);
+	}
+
+	/**
+	 * Check whether setValue is supported
+	 * @return true if the values cannot be modified
+	 */
+	public boolean isReadOnly() {
+		return false;
+	}
+
+	/**
+	 * Get number of stored entries
+	 * @return number of nonzeros
+	 */
+	public int getNumNonZeros() {
+		int nnz = 0;
+
+		for(int a=0; a<nActions; a++) {
+			for(int r=0; r<nRows; r++) {
+				nnz += getRowEnd(a, r) - getRowStart(a, r);
+			}
+		}
+
+		return nnz;
+	}
+
+	public int getNumActions() {
+		return nActions;
+	}
+
+	public int getNumRows() {
+		return nRows;
+	}
+
+	public int getNumColumns() {
+		return nColumns;
+	}
+
+	/**
+	 * Incrementally builds sparse matrices. For each action, entries must be added in increasing (row, column) order.
+	 */
+	public static class Builder {
+		private int nActions;
+		private int nRows;
+		private int nColumns;
+
+		private int[][] rowStart;
+		private int[][] columns;
+		private double[][] values;
+		private int[] size;
+		private int[] lastRow;
+		private int[] lastColumn;
+
+		public Builder(int nActions, int nRows, int nColumns) {
+			this.nActions = nActions;
+			this.nRows = nRows;
+			this.nColumns = nColumns;
+			this.rowStart = new int[nActions][nRows+1];
+			this.columns = new int[nActions][];
+			this.values = new double[nActions][];
+			this.size = new int[nActions];
+			this.lastRow = new int[nActions];
+			this.lastColumn = new int[nActions];
+
+			for(int a=0; a<nActions; a++) {
+				columns[a] = new int[Math.max(nRows, 1)];
+				values[a] = new double[Math.max(nRows, 1)];
+				lastColumn[a] = -1;
+			}
+		}
+
+		/**
+		 * Add an entry, zero values are skipped
+		 * @param a action a
+		 * @param row row
+		 * @param column column
+		 * @param value value
+		 */
+		public void add(int a, int row, int column, double value) {
+			assert row > lastRow[a] || (row == lastRow[a] && column > lastColumn[a]) : "entries must be added in increasing order";
+			if(value == 0.0) return;
+
+			if(size[a] == columns[a].length) {
+				int newLength = columns[a].length * 2;
+				columns[a] = Arrays.copyOf(columns[a], newLength);
+				values[a] = Arrays.copyOf(values[a], newLength);
+			}
+
+			columns[a][size[a]] = column;
+			values[a][size[a]] = value;
+			size[a]++;
+			rowStart[a][row+1]++;
+			lastRow[a] = row;
+			lastColumn[a] = column;
+		}
+
+		public SparseActionMatrix build() {
+			int nnz = 0;
+
+			for(int a=0; a<nActions; a++) {
+				nnz += size[a];
+			}
+
+			// interleave the rows of the actions, rowStart[a][r+1] holds the length of row r of action a
+			int[] flatRowStart = new int[nActions*nRows+1];
+			int[] flatColumns = new int[nnz];
+			double[] flatValues = new double[nnz];
+			int[] position = new int[nActions];
+			int k = 0;
+
+			for(int r=0; r<nRows; r++) {
+				for(int a=0; a<nActions; a++) {
+					int length = rowStart[a][r+1];
+					System.arraycopy(columns[a], position[a], flatColumns, k, length);
+					System.arraycopy(values[a], position[a], flatValues, k, length);
+					position[a] += length;
+					k += length;
+					flatRowStart[r*nActions+a+1] = k;
+				}
+			}
+
+			return new SparseActionMatrix(nActions, nRows, nColumns, flatRowStart, flatColumns, flatValues);
+		}
+	}
+}
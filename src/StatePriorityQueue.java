@@ -0,0 +1,133 @@
+
+/**
+ * Indexed binary max-heap over states, which allows the priority of a state in the queue to be changed
+ */
+public class StatePriorityQueue {
+	private int size = 0;
+	private int[] heap; // heap[i] is the state at heap position i
+	private int[] position; // position[s] is the heap position of state s, or -1 if s is not in the queue
+	private double[] priority;
+	
+	public StatePriorityQueue(int nStates) {
+		this.heap = new int[nStates];
+		this.position = new int[nStates];
+		this.priority = new double[nStates];
+		
+		for(int s=0; s<nStates; s++) {
+			position[s] = -1;
+		}
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean contains(int s) {
+		return position[s] >= 0;
+	}
+	
+	/**
+	 * Get priority of a state, which is 0 if the state is not in the queue
+	 * @param s state s
+	 * @return priority
+	 */
+	public double getPriority(int s) {
+		return position[s] >= 0 ? priority[s] : 0.0;
+	}
+	
+	/**
+	 * Get the highest priority in the queue
+	 * @return priority of the first state
+	 */
+	public double peekPriority() {
+		assert size > 0;
+		return priority[heap[0]];
+	}
+	
+	/**
+	 * Insert a state, or change its priority if it is already in the queue
+	 * @param s state s
+	 * @param p priority
+	 */
+	public void set(int s, double p) {
+		if(position[s] < 0) {
+			heap[size] = s;
+			position[s] = size;
+			priority[s] = p;
+			size++;
+			siftUp(position[s]);
+		}
+		else {
+			double old = priority[s];
+			priority[s] = p;
+			
+			if(p > old) {
+				siftUp(position[s]);
+			}
+			else {
+				siftDown(position[s]);
+			}
+		}
+	}
+	
+	/**
+	 * Remove the state with the highest priority
+	 * @return state
+	 */
+	public int poll() {
+		assert size > 0;
+		int s = heap[0];
+		size--;
+		
+		if(size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		
+		position[s] = -1;
+		return s;
+	}
+	
+	private void siftUp(int i) {
+		int s = heap[i];
+		
+		while(i > 0) {
+			int parent = (i - 1) >>> 1;
+			if(priority[heap[parent]] >= priority[s]) break;
+			
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+		
+		heap[i] = s;
+		position[s] = i;
+	}
+	
+	private void siftDown(int i) {
+		int s = heap[i];
+		
+		while(true) {
+			int child = 2 * i + 1;
+			if(child >= size) break;
+			
+			if(child + 1 < size && priority[heap[child + 1]] > priority[heap[child]]) {
+				child++;
+			}
+			
+			if(priority[heap[child]] <= priority[s]) break;
+			
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+		
+		heap[i] = s;
+		position[s] = i;
+	}
+}
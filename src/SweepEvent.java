@@ -0,0 +1,112 @@
+/**
+ * Metrics of a single sweep of a solver. For solvers that do not sweep over all states,
+ * such as prioritized sweeping, a sweep is a fixed number of backups.
+ */
+public class SweepEvent {
+	private final String solver;
+	private final String model;
+	private final int iteration;
+	private final double delta;
+	private final long wallTimeNanos;
+	private final long backups;
+	private final long allocatedBytes;
+	private final long beliefPreparations;
+	private final long beliefUpdates;
+	
+	public SweepEvent(String solver, String model, int iteration, double delta, long wallTimeNanos, long backups, long allocatedBytes, long beliefPreparations, long beliefUpdates) {
+		this.solver = solver;
+		this.model = model;
+		this.iteration = iteration;
+		this.delta = delta;
+		this.wallTimeNanos = wallTimeNanos;
+		this.backups = backups;
+		this.allocatedBytes = allocatedBytes;
+		this.beliefPreparations = beliefPreparations;
+		this.beliefUpdates = beliefUpdates;
+	}
+	
+	/**
+	 * Get name of the solver class
+	 * @return solver name
+	 */
+	public String getSolver() {
+		return solver;
+	}
+	
+	/**
+	 * Get name of the model that is solved
+	 * @return model name
+	 */
+	public String getModel() {
+		return model;
+	}
+	
+	/**
+	 * Get number of the sweep, starting at 1
+	 * @return iteration
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+	
+	/**
+	 * Get the convergence measure of the solver after the sweep, such as the maximum change of a Q-value
+	 * @return delta
+	 */
+	public double getDelta() {
+		return delta;
+	}
+	
+	/**
+	 * Get wall time of the sweep
+	 * @return time in nanoseconds
+	 */
+	public long getWallTimeNanos() {
+		return wallTimeNanos;
+	}
+	
+	/**
+	 * Get number of backups in the sweep, where a backup computes one Q-value Q(s,a), or the alpha vector of one belief for a point-based solver
+	 * @return number of backups
+	 */
+	public long getBackups() {
+		return backups;
+	}
+	
+	/**
+	 * Get number of backups per second of wall time
+	 * @return backups per second
+	 */
+	public double getBackupsPerSecond() {
+		return wallTimeNanos > 0 ? backups / (wallTimeNanos / 1e9) : 0.0;
+	}
+	
+	/**
+	 * Get number of bytes allocated during the sweep by the threads that were alive at the start of the sweep
+	 * The value includes a constant overhead of the measurement itself, which is below 1 KB
+	 * @return allocated bytes, or -1 if the JVM does not support allocation measurement
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+	
+	/**
+	 * Get total number of prepareBelief calls on the model at the end of the sweep
+	 * @return number of calls
+	 */
+	public long getBeliefPreparations() {
+		return beliefPreparations;
+	}
+	
+	/**
+	 * Get total number of belief updates computed by the model at the end of the sweep
+	 * @return number of updates
+	 */
+	public long getBeliefUpdates() {
+		return beliefUpdates;
+	}
+	
+	public String toString() {
+		return String.format("<Sweep %s %s iteration=%d delta=%f time=%.3fms backups=%d>", solver, model, iteration, delta, wallTimeNanos / 1e6, backups);
+	}
+}
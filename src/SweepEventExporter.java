@@ -0,0 +1,94 @@
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * Listener that writes each sweep event as a line of JSON or CSV
+ */
+public class SweepEventExporter implements SolverListener, Closeable {
+	public enum Format { JSON_LINES, CSV }
+	
+	private static final String[] FIELDS = {"solver", "model", "iteration", "delta", "wallTimeNanos", "backups", "backupsPerSecond", "allocatedBytes", "beliefPreparations", "beliefUpdates"};
+	
+	private final PrintWriter writer;
+	private final Format format;
+	private boolean headerWritten = false;
+	
+	public SweepEventExporter(Writer writer, Format format) {
+		this.writer = new PrintWriter(writer);
+		this.format = format;
+	}
+	
+	public synchronized void sweepCompleted(SweepEvent event) {
+		Object[] values = {event.getSolver(), event.getModel(), event.getIteration(), event.getDelta(), event.getWallTimeNanos(), event.getBackups(), event.getBackupsPerSecond(), event.getAllocatedBytes(), event.getBeliefPreparations(), event.getBeliefUpdates()};
+		StringBuilder line = new StringBuilder();
+		
+		if(format == Format.CSV) {
+			if(!headerWritten) {
+				writer.println(String.join(",", FIELDS));
+				headerWritten = true;
+			}
+			
+			for(int i = 0; i < values.length; i++) {
+				if(i > 0) line.append(',');
+				line.append(values[i] instanceof String ? toCSVString((String) values[i]) : values[i].toString());
+			}
+		}
+		else {
+			line.append('{');
+			
+			for(int i = 0; i < values.length; i++) {
+				if(i > 0) line.append(',');
+				line.append(toJSONString(FIELDS[i])).append(':');
+				
+				if(values[i] instanceof String) {
+					line.append(toJSONString((String) values[i]));
+				}
+				else if(values[i] instanceof Double && !Double.isFinite((Double) values[i])) {
+					line.append("null");
+				}
+				else {
+					line.append(values[i]);
+				}
+			}
+			
+			line.append('}');
+		}
+		
+		// flush every event, so that the stream can be followed while the solver runs
+		writer.println(line);
+		writer.flush();
+	}
+	
+	public void close() {
+		writer.close();
+	}
+	
+	private static String toCSVString(String s) {
+		if(s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) {
+			return s;
+		}
+		
+		return '"' + s.replace("\"", "\"\"") + '"';
+	}
+	
+	private static String toJSONString(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			
+			if(c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if(c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+
+public class TopologicalVI extends Solver {
+	
+	private double[] qTable; // Q(s,a) at position s*nActions+a
+	private double[] value; // value[s] = max(0, max_a Q(s,a)), updated in place
+	private double threshold = 0.01;
+	
+	private int nComponents;
+	private int[] componentStart; // states of component c are componentStates[componentStart[c]] ... componentStates[componentStart[c+1]-1]
+	private int[] componentStates;
+	
+	public TopologicalVI(POMDP mdp) {
+		super(mdp);
+		this.qTable = new double[this.mdp.getNumStates()*this.mdp.getNumActions()];
+		this.value = new double[this.mdp.getNumStates()];
+	}
+	
+	/**
+	 * Set threshold on the maximum change of a Q-value in a sweep over a component
+	 * @param threshold threshold
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+	
+	public void Solve() {
+		computeComponents();
+		int nActions = this.mdp.getNumActions();
+		long count = 0;
+		int sweeps = 0;
+		
+		// components are found in reverse topological order, so all successors of a component are solved before it
+		for(int c = 0; c < nComponents; c++) {
+			double delta = 1;
+			
+			while(delta > threshold) {
+				delta = 0;
+				sweeps++;
+				beginSweep();
+				
+				for(int i = componentStart[c]; i < componentStart[c+1]; i++) {
+					int s = componentStates[i];
+					double max = 0;
+					count++;
+					
+					for(int a = 0; a < nActions; a++) {
+						double q = computeQValue(s, a, value);
+						delta = Math.max(delta, Math.abs(q - qTable[s*nActions+a]));
+						qTable[s*nActions+a] = q;
+						
+						if(max < q) {
+							max = q;
+						}
+					}
+					
+					value[s] = max;
+				}
+				
+				endSweep(sweeps, delta, (long) (componentStart[c+1] - componentStart[c]) * nActions);
+			}
+		}
+		
+		printQTable(qTable);
+		System.out.format("The amount of components was: %d%n", nComponents);
+		System.out.format("The amount of backups was: %d%n", count);
+	}
+	
+	/**
+	 * Compute the strongly connected components of the graph with an edge s -> sNext if P(sNext | s,a) > 0 for some a.
+	 * Uses an iterative version of Tarjan's algorithm, which emits components in reverse topological order.
+	 */
+	private void computeComponents() {
+		int nStates = this.mdp.getNumStates();
+		int nActions = this.mdp.getNumActions();
+		SparseActionMatrix transitionFunction = this.mdp.getSparseTransitionFunction();
+		
+		int[] index = new int[nStates];
+		int[] lowLink = new int[nStates];
+		boolean[] onStack = new boolean[nStates];
+		int[] stack = new int[nStates];
+		int stackSize = 0;
+		
+		// explicit call stack, each frame holds a state and the position of its next edge
+		int[] callStack = new int[nStates];
+		int[] edgeAction = new int[nStates];
+		int[] edgePos = new int[nStates];
+		int callStackSize = 0;
+		
+		Arrays.fill(index, -1);
+		componentStart = new int[nStates+1];
+		componentStates = new int[nStates];
+		nComponents = 0;
+		int nextIndex = 0;
+		int nAssigned = 0;
+		
+		for(int root = 0; root < nStates; root++) {
+			if(index[root] >= 0) continue;
+			
+			callStack[callStackSize++] = root;
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			edgeAction[root] = 0;
+			edgePos[root] = transitionFunction.getRowStart(0, root);
+			
+			while(callStackSize > 0) {
+				int v = callStack[callStackSize-1];
+				boolean descended = false;
+				
+				while(edgeAction[v] < nActions && !descended) {
+					int a = edgeAction[v];
+					
+					if(edgePos[v] >= transitionFunction.getRowEnd(a, v)) {
+						edgeAction[v]++;
+						
+						if(edgeAction[v] < nActions) {
+							edgePos[v] = transitionFunction.getRowStart(edgeAction[v], v);
+						}
+						continue;
+					}
+					
+					int w = transitionFunction.getColumn(a, edgePos[v]);
+					edgePos[v]++;
+					
+					if(index[w] < 0) {
+						callStack[callStackSize++] = w;
+						index[w] = lowLink[w] = nextIndex++;
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						edgeAction[w] = 0;
+						edgePos[w] = transitionFunction.getRowStart(0, w);
+						descended = true;
+					}
+					else if(onStack[w]) {
+						lowLink[v] = Math.min(lowLink[v], index[w]);
+					}
+				}
+				
+				if(descended) continue;
+				
+				// all edges of v have been visited
+				if(lowLink[v] == index[v]) {
+					int w;
+					
+					do {
+						w = stack[--stackSize];
+						onStack[w] = false;
+						componentStates[nAssigned++] = w;
+					} while(w != v);
+					
+					nComponents++;
+					componentStart[nComponents] = nAssigned;
+				}
+				
+				callStackSize--;
+				
+				if(callStackSize > 0) {
+					int parent = callStack[callStackSize-1];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+				}
+			}
+		}
+	}
+	
+	public int getNumComponents() {
+		return nComponents;
+	}
+	
+	/**
+	 * Get Q-table
+	 * @return Q-table with Q(s,a) at position s*nActions+a
+	 */
+	public double[] getQTable() {
+		return qTable;
+	}
+}
@@ -1,76 +1,634 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
 
-public class VI extends Solver {
+public class VI extends Solver implements AnytimeSolver {
 	
-	private double[][] qTable;
-	private double[][] qTablePrev;
+	public enum StoppingRule {
+		Q_CHANGE, // stop when the maximum change of a Q-value in a sweep is at most epsilon
+		EPSILON_OPTIMAL // stop when the Bellman residual is below epsilon * (1 - discount) / (2 * discount)
+	}
+	
+	private double[] qTable; // Q(s,a) at position s*nActions+a
+	private double[] qTablePrev;
+	private float[] qTableFloat; // used instead of qTable in single precision mode
+	private float[] qTableFloatPrev;
+	private boolean singlePrecision = false;
+	private int iteration = 0; // number of sweeps executed by this solver
+	private double[] value; // value[s] = max(0, max_a qTable[s][a]), filled during a sweep
+	private double[] valuePrev; // value[s] = max(0, max_a qTablePrev[s][a])
+	private double[] valueSource; // values read by the current sweep, which are valuePrev or valueExtrapolated
+	
+	private ForkJoinPool pool = null; // if null, sweeps are executed sequentially
+	private int chunkSize = 64; // number of states backed up by a single parallel task
+	
+	private StoppingRule stoppingRule = StoppingRule.Q_CHANGE;
+	private double relaxation = 1.0;
+	private int andersonMemory = 0;
+	private AndersonAccelerator accelerator = null; // if null, each sweep reads the values of the previous sweep
+	private double[] valueExtrapolated; // values extrapolated by the accelerator from previous sweeps
+	
+	private double lastDelta = Double.POSITIVE_INFINITY; // maximum change of a Q-value in the last completed sweep
+	private double residual = Double.POSITIVE_INFINITY; // Bellman residual max_s |value[s] - valueSource[s]| of the last completed sweep
+	private int plainSweeps = 0; // number of sweeps that read valuePrev before extrapolation is tried again
+	private int plainSweepsAfterRejection = 1; // doubled by each rejection, reset by an accepted extrapolated sweep
+	private int rejectedSweeps = 0;
+	private double sourceDistance = 0.0; // max_s |valueSource[s] - valuePrev[s]| of the current sweep
+	private boolean interruptible = false; // true during solve, where sweeps stop when the deadline passes or the token is set
+	private boolean hasDeadline;
+	private long deadline;
+	private CancellationToken token;
+	private volatile boolean interrupted = false; // set when the current sweep has been stopped before all states were backed up
+	
+	private boolean[] eliminated = null; // eliminated[s*nActions+a] is true if a is suboptimal in s, null if elimination is disabled
+	private double eliminationLower; // lower bound on V*(s) - valueSource[s] for all s during the current sweep
+	private double eliminationUpper; // upper bound on V*(s) - valueSource[s] for all s during the current sweep
+	private LongAdder skippedBackups = new LongAdder();
+	private LongAdder sweepBackups = new LongAdder(); // Q-values computed by the current sweep
 	
 	public VI(POMDP mdp) {
 		super(mdp);
 		initializeQTable();
 	}
 	
+	/**
+	 * Create a solver that executes each sweep in parallel using the given pool
+	 * @param mdp model
+	 * @param pool fork-join pool used to back up chunks of states
+	 */
+	public VI(POMDP mdp, ForkJoinPool pool) {
+		this(mdp);
+		this.pool = pool;
+	}
+	
+	/**
+	 * Set number of states backed up by a single parallel task
+	 * @param chunkSize chunk size
+	 */
+	public void setChunkSize(int chunkSize) {
+		assert chunkSize > 0;
+		this.chunkSize = chunkSize;
+	}
+	
+	/**
+	 * Store Q-values in single precision, which halves the memory used by the Q-tables.
+	 * Q-values are computed in double precision and rounded when they are stored.
+	 * @param singlePrecision true to store Q-values as floats
+	 */
+	public void setSinglePrecision(boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+		initializeQTable();
+	}
+	
+	/**
+	 * Get state values max(0, max_a Q(s,a)) computed by the last call to Solve
+	 * @return state values
+	 */
+	public double[] getValueFunction() {
+		return valuePrev;
+	}
+	
+	/**
+	 * Get maximum absolute difference between the state values of this solver and reference values,
+	 * for instance the values of a double precision run
+	 * @param reference state values
+	 * @return maximum difference
+	 */
+	public double getMaxValueError(double[] reference) {
+		double error = 0.0;
+		
+		for(int s = 0; s < this.mdp.getNumStates(); s++) {
+			error = Math.max(error, Math.abs(valuePrev[s] - reference[s]));
+		}
+		
+		return error;
+	}
+	
+	/**
+	 * Eliminate actions that are provably suboptimal and skip their backups in later sweeps. Bounds on V* are derived
+	 * from the minimum and maximum reward and from the value change of the last sweep, and action a is eliminated in s
+	 * if the upper bound on Q*(s,a) is below the lower bound on Q*(s,b) of another action b. Eliminated actions keep
+	 * the Q-value of the sweep in which they were eliminated.
+	 * @param actionElimination true to enable action elimination
+	 */
+	public void setActionElimination(boolean actionElimination) {
+		this.eliminated = actionElimination ? new boolean[this.mdp.getNumStates()*this.mdp.getNumActions()] : null;
+	}
+	
+	/**
+	 * Set the rule that decides convergence for the threshold 0.01 of Solve and the epsilon of solve. With
+	 * EPSILON_OPTIMAL, the returned state values are within epsilon / 2 of V* and their greedy policy is epsilon-optimal.
+	 * @param stoppingRule stopping rule
+	 */
+	public void setStoppingRule(StoppingRule stoppingRule) {
+		this.stoppingRule = stoppingRule;
+	}
+	
+	/**
+	 * Set relaxation factor omega, each sweep then reads the values (1 - omega) x + omega T(x), where x are the values
+	 * read by the previous sweep and T(x) the values it computed. Since sweeps are Jacobi updates, this is the
+	 * over-relaxation of the synchronous iteration. Values of omega above 1 extrapolate, 1 disables relaxation.
+	 * A relaxed sweep is rejected if it increases the Bellman residual. Its values are discarded and the following sweeps
+	 * are plain sweeps, whose number doubles with each consecutive rejection, so omega close to 2 cannot diverge.
+	 * @param omega relaxation factor in (0, 2)
+	 */
+	public void setRelaxation(double omega) {
+		assert omega > 0.0 && omega < 2.0;
+		this.relaxation = omega;
+		initializeAccelerator();
+	}
+	
+	/**
+	 * Extrapolate the values read by each sweep from the values and Bellman residuals of the last sweeps, using Anderson
+	 * acceleration with the relaxation factor as mixing parameter. Extrapolated sweeps are rejected in the same way as
+	 * relaxed sweeps, and a rejection clears the history.
+	 * @param memory number of previous sweeps used, 0 disables Anderson acceleration
+	 */
+	public void setAndersonAcceleration(int memory) {
+		assert memory >= 0;
+		this.andersonMemory = memory;
+		initializeAccelerator();
+	}
+	
+	private void initializeAccelerator() {
+		if(relaxation == 1.0 && andersonMemory == 0) {
+			accelerator = null;
+			valueExtrapolated = null;
+		}
+		else {
+			accelerator = new AndersonAccelerator(this.mdp.getNumStates(), andersonMemory, relaxation);
+			valueExtrapolated = new double[this.mdp.getNumStates()];
+		}
+	}
+	
+	/**
+	 * Check the stopping rule for the last completed sweep
+	 * @param epsilon threshold
+	 * @return true if the solver has converged
+	 */
+	private boolean hasConverged(double epsilon) {
+		if(stoppingRule == StoppingRule.Q_CHANGE) {
+			return lastDelta <= epsilon;
+		}
+		
+		double discount = this.mdp.getDiscountFactor();
+		return residual < epsilon * (1.0 - discount) / (2.0 * discount);
+	}
+	
+	/**
+	 * Get number of times the Anderson history was cleared
+	 * @return number of restarts
+	 */
+	public int getNumAccelerationRestarts() {
+		return accelerator == null ? 0 : accelerator.getNumRestarts();
+	}
+	
+	/**
+	 * Get number of relaxed or extrapolated sweeps that were rejected because they did not reduce the Bellman residual enough
+	 * @return number of rejected sweeps
+	 */
+	public int getNumRejectedSweeps() {
+		return rejectedSweeps;
+	}
+	
+	/**
+	 * Get number of Q-value backups that have been skipped because the action was eliminated
+	 * @return number of skipped backups
+	 */
+	public long getNumSkippedBackups() {
+		return skippedBackups.sum();
+	}
+	
+	/**
+	 * Set the Q-values the next sweep starts from. The state values are derived as max(0, max_a Q(s,a)).
+	 * Without this call, the solver continues from the Q-values of its previous solve, or from zero.
+	 * @param qTable Q-table with Q(s,a) at position s*nActions+a
+	 */
+	public void setInitialQTable(double[] qTable) {
+		int nActions = this.mdp.getNumActions();
+		assert qTable.length == this.mdp.getNumStates()*nActions;
+		
+		for(int s = 0; s < this.mdp.getNumStates(); s++) {
+			double max = 0;
+			
+			for(int i = s*nActions; i < (s+1)*nActions; i++) {
+				if(singlePrecision) {
+					qTableFloatPrev[i] = (float) qTable[i];
+				}
+				else {
+					qTablePrev[i] = qTable[i];
+				}
+				
+				double q = singlePrecision ? qTableFloatPrev[i] : qTablePrev[i];
+				
+				if(max < q) {
+					max = q;
+				}
+			}
+			
+			valuePrev[s] = max;
+		}
+		
+		lastDelta = Double.POSITIVE_INFINITY;
+		residual = Double.POSITIVE_INFINITY;
+		resetActionElimination();
+		
+		if(accelerator != null) {
+			accelerator.reset();
+		}
+		
+		plainSweeps = 0;
+		plainSweepsAfterRejection = 1;
+	}
+	
+	/**
+	 * Run sweeps until the stopping rule is satisfied for epsilon, the time budget or the maximum number
+	 * of sweeps is used up, or the token is cancelled. A sweep that is stopped by the deadline or the token is
+	 * discarded, so the result always contains the Q-values of the last completed sweep. Sweeps continue from the
+	 * current Q-values, which allows resolving after the model has been changed.
+	 * @param epsilon threshold of the stopping rule
+	 * @param timeBudgetMillis wall-clock budget in milliseconds, or a negative value for no budget
+	 * @param maxIterations maximum number of sweeps, or a negative value for no limit
+	 * @param token token that cancels the solver, or null
+	 * @return Q-values and state values of the last completed sweep, with the bound discount / (1 - discount) * residual
+	 */
+	public SolveResult solve(double epsilon, long timeBudgetMillis, int maxIterations, CancellationToken token) {
+		long start = System.nanoTime();
+		int count = 0;
+		SolveResult.Status status;
+		
+		// the model may have changed since the last sweep, so convergence is only decided by the sweeps of this call
+		this.lastDelta = Double.POSITIVE_INFINITY;
+		this.residual = Double.POSITIVE_INFINITY;
+		resetActionElimination();
+		
+		if(accelerator != null) {
+			accelerator.reset();
+		}
+		
+		this.plainSweeps = 0;
+		this.plainSweepsAfterRejection = 1;
+		this.hasDeadline = timeBudgetMillis >= 0;
+		this.deadline = start + timeBudgetMillis * 1000000L;
+		this.token = token;
+		this.interruptible = true;
+		
+		try {
+			while(true) {
+				if(hasConverged(epsilon)) {
+					status = SolveResult.Status.CONVERGED;
+					break;
+				}
+				
+				if(maxIterations >= 0 && count >= maxIterations) {
+					status = SolveResult.Status.ITERATION_LIMIT;
+					break;
+				}
+				
+				if(isInterrupted()) {
+					status = token != null && token.isCancelled() ? SolveResult.Status.CANCELLED : SolveResult.Status.TIME_LIMIT;
+					break;
+				}
+				
+				sweep();
+				
+				if(!interrupted) {
+					count++;
+				}
+			}
+		}
+		finally {
+			this.interruptible = false;
+			this.interrupted = false;
+			this.token = null;
+		}
+		
+		double discount = this.mdp.getDiscountFactor();
+		double errorBound = discount < 1.0 ? discount / (1.0 - discount) * residual : Double.POSITIVE_INFINITY;
+		return new SolveResult(status, getQTable(), valuePrev.clone(), count, residual, errorBound, System.nanoTime() - start);
+	}
+	
+	/**
+	 * Get Q-values of the last completed sweep
+	 * @return copy of the Q-table with Q(s,a) at position s*nActions+a
+	 */
+	public double[] getQTable() {
+		double[] result = new double[this.mdp.getNumStates()*this.mdp.getNumActions()];
+		
+		for(int i = 0; i < result.length; i++) {
+			result[i] = singlePrecision ? qTableFloatPrev[i] : qTablePrev[i];
+		}
+		
+		return result;
+	}
+	
+	private boolean isInterrupted() {
+		if(!interruptible) return false;
+		
+		return (token != null && token.isCancelled()) || (hasDeadline && System.nanoTime() - deadline >= 0);
+	}
+	
 	public void Solve() {
 		// Made assert that discount factor has to be between 0-1
-		int sNext,s,a;
-		double sum;
-		double delta = 1;
 		int count = 0;
-		while(delta > 0.01) {
-			delta = 0;
+		
+		do {
 			count++;
-			for(s = 0; s < this.mdp.getNumStates(); s++) {
-				for(a = 0; a < this.mdp.getNumActions(); a++) {
-					sum = 0.0;
-					
-					for(sNext = 0; sNext < this.mdp.getNumStates(); sNext++) {
-						sum = sum + this.mdp.getTransitionProbability(s, a, sNext)*getMaxQTablePrev(sNext);
-					}
-					this.qTable[s][a] = this.mdp.getReward(s, a) + this.mdp.getDiscountFactor()*sum;
-					delta = getDelta(delta, s, a);
-					//System.out.format("Delta: %f%n", delta);
-				}
-			}
-			saveCurrentQMatrix();
+			sweep();
+		} while(!hasConverged(0.01));
+		
+		// after the last swap qTablePrev holds the most recent Q-values
+		if(singlePrecision) {
+			printQTable(qTableFloatPrev);
+		}
+		else {
+			printQTable(qTablePrev);
 		}
-		printQTable();
 		System.out.format("The amount of cycles was: %d%n", count);
+		
+		if(eliminated != null) {
+			System.out.format("The amount of skipped backups was: %d%n", getNumSkippedBackups());
+		}
+		
+		if(accelerator != null) {
+			System.out.format("The amount of rejected sweeps was: %d%n", getNumRejectedSweeps());
+		}
 	}
 	
-	private double getMaxQTablePrev(int s) {
-		double max = 0;
-
-		for(int i = 0; i < this.mdp.getNumActions(); i++) {
-			if(max < qTablePrev[s][i]) {
-				max = qTablePrev[s][i];
+	/**
+	 * Execute one sweep that backs up all states, after which its Q-values are the most recent ones
+	 * @return maximum change of a Q-value, or NaN if the sweep was stopped by solve and its Q-values were discarded.
+	 * A rejected relaxed or extrapolated sweep is discarded as well and returns the change of the last accepted sweep.
+	 * The listeners are notified of an interrupted sweep with delta NaN and the backups it completed.
+	 */
+	public double sweep() {
+		double delta;
+		beginSweep();
+		sweepBackups.reset();
+		valueSource = valuePrev;
+		sourceDistance = 0.0;
+		
+		if(accelerator != null && accelerator.hasIterate() && plainSweeps == 0) {
+			accelerator.extrapolate(valueExtrapolated);
+			valueSource = valueExtrapolated;
+			
+			for(int s = 0; s < this.mdp.getNumStates(); s++) {
+				sourceDistance = Math.max(sourceDistance, Math.abs(valueExtrapolated[s] - valuePrev[s]));
 			}
 		}
-		return max;
+		
+		if(eliminated != null) {
+			computeEliminationBounds();
+		}
+		
+		if(pool == null) {
+			delta = backupStates(0, this.mdp.getNumStates());
+		}
+		else {
+			delta = pool.invoke(new SweepTask(0, this.mdp.getNumStates()));
+		}
+		
+		// the previous buffers are untouched by an interrupted sweep, so they still hold the last completed sweep
+		if(interrupted) {
+			endSweep(iteration + 1, Double.NaN, sweepBackups.sum());
+			return Double.NaN;
+		}
+		
+		iteration++;
+		double sweepResidual = 0.0;
+		
+		for(int s = 0; s < this.mdp.getNumStates(); s++) {
+			sweepResidual = Math.max(sweepResidual, Math.abs(value[s] - valueSource[s]));
+		}
+		
+		// a plain sweep from valuePrev has residual at most discount * residual, so it is the fallback
+		// for an extrapolated sweep that increased the residual
+		if(valueSource != valuePrev && !(sweepResidual <= residual)) {
+			rejectedSweeps++;
+			plainSweeps = plainSweepsAfterRejection;
+			plainSweepsAfterRejection *= 2;
+			accelerator.restart();
+			endSweep(iteration, lastDelta, sweepBackups.sum());
+			return lastDelta;
+		}
+		
+		if(valueSource != valuePrev) {
+			plainSweepsAfterRejection = 1;
+		}
+		else if(plainSweeps > 0) {
+			plainSweeps--;
+		}
+		
+		lastDelta = delta;
+		residual = sweepResidual;
+		
+		if(accelerator != null) {
+			accelerator.add(valueSource, value);
+		}
+		
+		saveCurrentQMatrix();
+		endSweep(iteration, delta, sweepBackups.sum());
+		return delta;
 	}
 	
-	private void printQTable() {
+	/**
+	 * Compute Q-values of the states in [sFrom, sTo) using the state values in valueSource
+	 * @param sFrom first state
+	 * @param sTo last state (exclusive)
+	 * @return maximum change of a Q-value in the range
+	 */
+	private double backupStates(int sFrom, int sTo) {
 		int s,a;
+		int nActions = this.mdp.getNumActions();
+		double delta = 0;
+		long skipped = 0;
 		
-		for( s=0; s<this.mdp.getNumStates(); s++) {
-			for( a=0; a<this.mdp.getNumActions(); a++) {
-				System.out.format("%06.3f  ", qTable[s][a]);
+		for(s = sFrom; s < sTo; s++) {
+			// checking the deadline every 64 states keeps the latency of solve within a fraction of a sweep
+			if(interruptible && (s - sFrom) % 64 == 0 && (interrupted || isInterrupted())) {
+				interrupted = true;
+				break;
+			}
+			
+			for(a = 0; a < nActions; a++) {
+				if(eliminated != null && eliminated[s*nActions+a]) {
+					// the Q-value of an eliminated action is carried over to the current buffer
+					if(singlePrecision) {
+						this.qTableFloat[s*nActions+a] = this.qTableFloatPrev[s*nActions+a];
+					}
+					else {
+						this.qTable[s*nActions+a] = this.qTablePrev[s*nActions+a];
+					}
+					skipped++;
+					continue;
+				}
+				
+				if(singlePrecision) {
+					this.qTableFloat[s*nActions+a] = (float) computeQValue(s, a, valueSource);
+				}
+				else {
+					this.qTable[s*nActions+a] = computeQValue(s, a, valueSource);
+				}
+				delta = getDelta(delta, s*nActions+a);
+				//System.out.format("Delta: %f%n", delta);
+			}
+			
+			value[s] = getMaxQTable(s);
+			
+			if(eliminated != null) {
+				eliminateActions(s);
 			}
-			System.out.format("%n");
 		}
-		System.out.format("%n%n%n");
 		
+		if(skipped > 0) {
+			skippedBackups.add(skipped);
+		}
+		
+		sweepBackups.add((long) (s - sFrom) * nActions - skipped);
+		
+		return delta;
 	}
 	
-	private void saveCurrentQMatrix() {
+	/**
+	 * Compute bounds on V*(s) - valueSource[s] from the rewards, which give max(0, minReward) / (1 - discount) <= V*(s) <=
+	 * max(0, maxReward) / (1 - discount), and from the contraction bound |V* - valuePrev| <= discount / (1 - discount) * residual,
+	 * which holds since valuePrev has been computed by a backup of the values read by the previous sweep
+	 */
+	private void computeEliminationBounds() {
+		double discount = this.mdp.getDiscountFactor();
+		
+		if(discount >= 1.0) {
+			eliminationLower = Double.NEGATIVE_INFINITY;
+			eliminationUpper = Double.POSITIVE_INFINITY;
+			return;
+		}
+		
+		double minValue = Double.POSITIVE_INFINITY;
+		double maxValue = Double.NEGATIVE_INFINITY;
+		
 		for(int s = 0; s < this.mdp.getNumStates(); s++) {
-			for(int a = 0; a < this.mdp.getNumActions(); a++) {
-				this.qTablePrev[s][a] = this.qTable[s][a];
+			minValue = Math.min(minValue, valueSource[s]);
+			maxValue = Math.max(maxValue, valueSource[s]);
+		}
+		
+		eliminationLower = Math.max(0.0, this.mdp.getMinReward()) / (1.0 - discount) - maxValue;
+		eliminationUpper = Math.max(0.0, this.mdp.getMaxReward()) / (1.0 - discount) - minValue;
+		
+		if(residual < Double.POSITIVE_INFINITY) {
+			double bound = discount / (1.0 - discount) * residual + sourceDistance;
+			eliminationLower = Math.max(eliminationLower, -bound);
+			eliminationUpper = Math.min(eliminationUpper, bound);
+		}
+	}
+	
+	/**
+	 * Eliminate actions of a state after its backup. Since Q*(s,a) = Q(s,a) + discount * sum_sNext P(sNext | s,a) (V*(sNext) - valueSource[sNext]),
+	 * Q*(s,a) lies in [Q(s,a) + discount * eliminationLower, Q(s,a) + discount * eliminationUpper].
+	 * @param s state s
+	 */
+	private void eliminateActions(int s) {
+		int nActions = this.mdp.getNumActions();
+		double discount = this.mdp.getDiscountFactor();
+		double best = Double.NEGATIVE_INFINITY;
+		
+		for(int i = s*nActions; i < (s+1)*nActions; i++) {
+			if(!eliminated[i]) {
+				best = Math.max(best, singlePrecision ? qTableFloat[i] : qTable[i]);
+			}
+		}
+		
+		double bestLower = best + discount * eliminationLower;
+		
+		for(int i = s*nActions; i < (s+1)*nActions; i++) {
+			double q = singlePrecision ? qTableFloat[i] : qTable[i];
+			
+			if(!eliminated[i] && q + discount * eliminationUpper < bestLower) {
+				eliminated[i] = true;
 			}
 		}
 	}
 	
-	private double getDelta(double delta, int s, int a) {
-		double d;	
-		d = Math.abs(this.qTablePrev[s][a] - this.qTable[s][a]);
+	/**
+	 * Restore all actions, which is required when the model or the Q-values may have changed
+	 */
+	private void resetActionElimination() {
+		if(eliminated != null) {
+			Arrays.fill(eliminated, false);
+		}
+	}
+	
+	/**
+	 * Backs up a range of states, splitting it until it is at most chunkSize states.
+	 * Each task only reads valueSource and writes its own rows of qTable and value, and the
+	 * maximum delta is combined afterwards, so the result does not depend on the schedule.
+	 */
+	private class SweepTask extends RecursiveTask<Double> {
+		private static final long serialVersionUID = 1L;
+		private final int sFrom;
+		private final int sTo;
+		
+		SweepTask(int sFrom, int sTo) {
+			this.sFrom = sFrom;
+			this.sTo = sTo;
+		}
+		
+		protected Double compute() {
+			if(sTo - sFrom <= chunkSize) {
+				return backupStates(sFrom, sTo);
+			}
+			
+			int sMid = (sFrom + sTo) >>> 1;
+			SweepTask left = new SweepTask(sFrom, sMid);
+			SweepTask right = new SweepTask(sMid, sTo);
+			left.fork();
+			double deltaRight = right.compute();
+			double deltaLeft = left.join();
+			
+			return Math.max(deltaLeft, deltaRight);
+		}
+	}
+	
+	private double getMaxQTable(int s) {
+		int nActions = this.mdp.getNumActions();
+		double max = 0;
+		
+		for(int i = s*nActions; i < (s+1)*nActions; i++) {
+			if(eliminated != null && eliminated[i]) continue;
+			double q = singlePrecision ? qTableFloat[i] : qTable[i];
+			
+			if(max < q) {
+				max = q;
+			}
+		}
+		return max;
+	}
+	
+	/**
+	 * Swap the current and previous buffers, every entry of qTable and value is overwritten by the next sweep
+	 */
+	private void saveCurrentQMatrix() {
+		double[] qTableSwap = qTablePrev;
+		qTablePrev = qTable;
+		qTable = qTableSwap;
+		
+		float[] qTableFloatSwap = qTableFloatPrev;
+		qTableFloatPrev = qTableFloat;
+		qTableFloat = qTableFloatSwap;
+		
+		double[] valueSwap = valuePrev;
+		valuePrev = value;
+		value = valueSwap;
+	}
+	
+	private double getDelta(double delta, int i) {
+		double d;
+		if(singlePrecision) {
+			d = Math.abs(this.qTableFloatPrev[i] - this.qTableFloat[i]);
+		}
+		else {
+			d = Math.abs(this.qTablePrev[i] - this.qTable[i]);
+		}
 		if(delta < d) {
 			return d;
 		}
@@ -78,7 +636,12 @@ public class VI extends Solver {
 	}
 	
 	private void initializeQTable() {
-		this.qTable = new double[this.mdp.getNumStates()][this.mdp.getNumActions()];
-		this.qTablePrev = new double[this.mdp.getNumStates()][this.mdp.getNumActions()];
+		int size = this.mdp.getNumStates()*this.mdp.getNumActions();
+		this.qTable = singlePrecision ? null : new double[size];
+		this.qTablePrev = singlePrecision ? null : new double[size];
+		this.qTableFloat = singlePrecision ? new float[size] : null;
+		this.qTableFloatPrev = singlePrecision ? new float[size] : null;
+		this.value = new double[this.mdp.getNumStates()];
+		this.valuePrev = new double[this.mdp.getNumStates()];
 	}
 }
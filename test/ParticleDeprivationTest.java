@@ -0,0 +1,63 @@
+/**
+ * Test of the particle reinvigoration of POMCP. The model moves from state 0 to state 2 with a small probability and only
+ * state 2 emits observation 1, so a few particles that start in state 0 almost never reach state 2 and are deprived when
+ * observation 1 is received.
+ *
+ * Usage: javac -d out -cp "lib/*" src/*.java test/*.java && java -ea -cp "out:lib/*" ParticleDeprivationTest
+ */
+public class ParticleDeprivationTest {
+	private static final int N_PARTICLES = 10;
+	
+	public static void main(String[] args) {
+		POMDP pomdp = createModel();
+		int a = 0;
+		int o = 1;
+		int deprivations = 0;
+		
+		for(long seed = 0; seed < 100; seed++) {
+			POMCP planner = new POMCP(pomdp, seed);
+			planner.setNumParticles(N_PARTICLES);
+			planner.reset();
+			planner.update(a, o);
+			deprivations += planner.getNumParticleDeprivations();
+			
+			ParticleBelief belief = planner.getBelief();
+			check(belief.getNumParticles() == N_PARTICLES, "number of particles changed");
+			BeliefPoint b = belief.toBeliefPoint(pomdp.getNumStates());
+			
+			for(int s = 0; s < pomdp.getNumStates(); s++) {
+				check(b.getBelief(s) == 0.0 || pomdp.getObservationProbability(a, s, o) > 0.0, "particle in state "+s+" is inconsistent with the observation");
+			}
+		}
+		
+		check(deprivations > 0, "the particles were never deprived");
+		System.out.println("ParticleDeprivationTest passed, deprivations: "+deprivations);
+	}
+	
+	/**
+	 * Create a model with 3 states and 2 observations, where action 0 moves state 0 to state 2 with probability 0.001
+	 * @return model with initial belief in state 0
+	 */
+	private static POMDP createModel() {
+		int nStates = 3;
+		double[][] rewards = new double[nStates][1];
+		double[][][] transitions = new double[nStates][1][nStates];
+		transitions[0][0][0] = 0.999;
+		transitions[0][0][2] = 0.001;
+		transitions[1][0][1] = 1.0;
+		transitions[2][0][2] = 1.0;
+		
+		double[][][] observations = new double[1][nStates][2];
+		observations[0][0][0] = 1.0;
+		observations[0][1][0] = 1.0;
+		observations[0][2][1] = 1.0;
+		
+		return new POMDP("deprivation", nStates, 1, 2, 0.95, rewards, transitions, observations, new BeliefPoint(new double[] {1.0, 0.0, 0.0}));
+	}
+	
+	private static void check(boolean condition, String message) {
+		if(!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}